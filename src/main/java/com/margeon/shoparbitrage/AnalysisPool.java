@@ -0,0 +1,106 @@
+package com.margeon.shoparbitrage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Singleton;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded fork/join pool for market-wide analysis (flip scoring and the metrics behind it).
+ *
+ * Uses at most half the available cores so the client and its render thread
+ * always have some left over. The worker threads are daemons at slightly
+ * below normal priority. The pool is created on first use and torn down in
+ * {@link #shutdown}, so it costs nothing while the plugin is disabled.
+ */
+@Slf4j
+@Singleton
+public class AnalysisPool
+{
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private ForkJoinPool pool;
+
+    /**
+     * Number of worker threads the pool runs with
+     */
+    public static int parallelism()
+    {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
+
+    /**
+     * Run a task on the pool and wait for it to finish
+     */
+    public <T> T invoke(ForkJoinTask<T> task)
+    {
+        return pool().invoke(task);
+    }
+
+    /**
+     * Run a task on the pool without waiting for it. Exceptions are logged.
+     */
+    public void execute(Runnable task)
+    {
+        pool().execute(() ->
+        {
+            try
+            {
+                task.run();
+            }
+            catch (Exception e)
+            {
+                log.error("Analysis task failed", e);
+            }
+        });
+    }
+
+    private synchronized ForkJoinPool pool()
+    {
+        if (pool == null || pool.isShutdown())
+        {
+            pool = new ForkJoinPool(parallelism(), AnalysisPool::newThread, null, false);
+            log.debug("Started analysis pool with {} threads", pool.getParallelism());
+        }
+        return pool;
+    }
+
+    private static ForkJoinWorkerThread newThread(ForkJoinPool pool)
+    {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("shop-arbitrage-analysis-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    }
+
+    /**
+     * Stop the worker threads. The pool is recreated if it is used again.
+     */
+    public synchronized void shutdown()
+    {
+        if (pool == null)
+        {
+            return;
+        }
+
+        pool.shutdown();
+        try
+        {
+            if (!pool.awaitTermination(5, TimeUnit.SECONDS))
+            {
+                pool.shutdownNow();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        pool = null;
+    }
+}
@@ -0,0 +1,93 @@
+package com.margeon.shoparbitrage;
+
+import net.runelite.client.ui.ColorScheme;
+import net.runelite.client.ui.FontManager;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import java.awt.*;
+import java.util.List;
+
+/**
+ * Debug section showing the Wiki API counters from {@link WikiApiMetrics}
+ * and the timeseries cache stats from {@link PriceHistoryService}.
+ * Refreshes itself every couple of seconds while it is showing.
+ */
+public class ApiMetricsPanel extends JPanel
+{
+    private static final int REFRESH_MS = 2000;
+
+    private final WikiApiMetrics apiMetrics;
+    private final PriceHistoryService priceHistoryService;
+    private final JLabel[] rows;
+    private final JLabel cacheRow;
+    private final Timer refreshTimer;
+
+    public ApiMetricsPanel(WikiApiMetrics apiMetrics, PriceHistoryService priceHistoryService)
+    {
+        this.apiMetrics = apiMetrics;
+        this.priceHistoryService = priceHistoryService;
+
+        setLayout(new GridLayout(0, 1, 0, 2));
+        setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        setBorder(new EmptyBorder(6, 8, 6, 8));
+
+        JLabel title = new JLabel("Wiki API Stats");
+        title.setFont(FontManager.getRunescapeBoldFont());
+        title.setForeground(Color.WHITE);
+        add(title);
+
+        List<WikiApiMetrics.Endpoint> endpoints = apiMetrics.getEndpoints();
+        rows = new JLabel[endpoints.size()];
+        for (int i = 0; i < rows.length; i++)
+        {
+            rows[i] = new JLabel();
+            rows[i].setFont(FontManager.getRunescapeSmallFont());
+            rows[i].setForeground(Color.LIGHT_GRAY);
+            add(rows[i]);
+        }
+
+        cacheRow = new JLabel();
+        cacheRow.setFont(FontManager.getRunescapeSmallFont());
+        cacheRow.setForeground(Color.LIGHT_GRAY);
+        add(cacheRow);
+
+        refreshTimer = new Timer(REFRESH_MS, e -> refresh());
+        refresh();
+    }
+
+    @Override
+    public void addNotify()
+    {
+        super.addNotify();
+        refreshTimer.start();
+    }
+
+    @Override
+    public void removeNotify()
+    {
+        refreshTimer.stop();
+        super.removeNotify();
+    }
+
+    private void refresh()
+    {
+        if (!isShowing() && refreshTimer.isRunning())
+        {
+            return;
+        }
+
+        List<WikiApiMetrics.Endpoint> endpoints = apiMetrics.getEndpoints();
+        for (int i = 0; i < rows.length; i++)
+        {
+            WikiApiMetrics.Endpoint endpoint = endpoints.get(i);
+            long p95 = endpoint.getLatencyPercentileMs(0.95);
+            rows[i].setText(String.format("<html>/%s: %d req, %d fail<br>avg %.0fms, p95 %s, %d KB, parse %.1fms, %d items</html>",
+                    endpoint.getName(), endpoint.getRequests(), endpoint.getFailures(), endpoint.getMeanLatencyMs(),
+                    p95 < 0 ? "10s+" : p95 + "ms", endpoint.getBytes() / 1024, endpoint.getMeanParseMs(),
+                    endpoint.getItems()));
+            rows[i].setToolTipText(endpoint.histogram());
+        }
+        cacheRow.setText("<html>timeseries cache: " + priceHistoryService.getTimeSeriesCacheStats() + "</html>");
+    }
+}
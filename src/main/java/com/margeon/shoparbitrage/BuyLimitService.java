@@ -0,0 +1,236 @@
+package com.margeon.shoparbitrage;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
+import okhttp3.*;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GE buy limits for every tradeable item.
+ *
+ * Starts from the limits cached on disk by the last /mapping refresh, or the
+ * bundled buy-limits.json on a fresh install. {@link #refreshIfStale} then
+ * downloads the Wiki's /mapping once a week; its limits replace the table,
+ * with the bundled limits filling in any item the Wiki has no limit for.
+ * The bundled table is a snapshot of /mapping, regenerated with
+ * {@code ./gradlew updateBuyLimits}.
+ */
+@Slf4j
+@Singleton
+public class BuyLimitService
+{
+    private static final String MAPPING_URL = "https://prices.runescape.wiki/api/v1/osrs/mapping";
+    private static final String USER_AGENT = "ShopArbitragePlugin - Discord: philly_9859";
+    private static final String BUNDLED_RESOURCE = "/buy-limits.json";
+    private static final File CACHE_FILE = new File(RuneLite.RUNELITE_DIR, "wiki-buy-limits.json");
+
+    // Buy limits rarely change; only new items need a refresh
+    private static final long REFRESH_INTERVAL_MS = TimeUnit.DAYS.toMillis(7);
+
+    private final OkHttpClient okHttpClient;
+    private final Gson gson;
+    private final WikiApiMetrics apiMetrics;
+
+    private final BuyLimitTable bundled;
+    private volatile BuyLimitTable limits;
+    private volatile long fetchedAt;
+    private volatile boolean refreshing;
+
+    @Inject
+    public BuyLimitService(OkHttpClient okHttpClient, Gson gson, WikiApiMetrics apiMetrics)
+    {
+        this.okHttpClient = okHttpClient;
+        this.gson = gson;
+        this.apiMetrics = apiMetrics;
+
+        bundled = loadBundled();
+        limits = bundled;
+        loadCached();
+    }
+
+    /**
+     * Buy limit for an item (returns 0 if unknown)
+     */
+    public int getBuyLimit(int itemId)
+    {
+        return limits.get(itemId);
+    }
+
+    /**
+     * Number of items with a known buy limit
+     */
+    public int size()
+    {
+        return limits.size();
+    }
+
+    /**
+     * Download /mapping if the limits are more than a week old. onUpdated runs on the
+     * HTTP callback thread once new limits are in place, and not at all if nothing was fetched.
+     */
+    public void refreshIfStale(Runnable onUpdated)
+    {
+        if (System.currentTimeMillis() - fetchedAt < REFRESH_INTERVAL_MS || refreshing)
+        {
+            return;
+        }
+        refreshing = true;
+
+        Request request = new Request.Builder()
+                .url(MAPPING_URL)
+                .header("User-Agent", USER_AGENT)
+                .build();
+
+        log.info("Fetching item mapping (buy limits) from Wiki API...");
+
+        final WikiApiMetrics.Endpoint metrics = apiMetrics.endpoint(WikiApiMetrics.MAPPING);
+        final long started = metrics.start();
+        okHttpClient.newCall(request).enqueue(new Callback()
+        {
+            @Override
+            public void onFailure(Call call, IOException e)
+            {
+                log.warn("Failed to fetch item mapping: {}", e.getMessage());
+                metrics.failed();
+                refreshing = false;
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException
+            {
+                metrics.responded(started);
+                boolean updated = false;
+                try
+                {
+                    if (!response.isSuccessful())
+                    {
+                        log.warn("Mapping API returned error: {}", response.code());
+                        metrics.failed();
+                        return;
+                    }
+
+                    long parseStart = System.nanoTime();
+                    BuyLimitTable fetched;
+                    try (JsonReader reader = gson.newJsonReader(new InputStreamReader(
+                            metrics.count(response.body().byteStream()), StandardCharsets.UTF_8)))
+                    {
+                        fetched = BuyLimitTable.read(reader);
+                    }
+                    metrics.parsed(parseStart, fetched.size());
+
+                    if (fetched.size() == 0)
+                    {
+                        log.warn("Item mapping had no buy limits, keeping the current ones");
+                        return;
+                    }
+
+                    limits = fetched.withFallback(bundled);
+                    fetchedAt = System.currentTimeMillis();
+                    saveCached(fetched);
+                    updated = true;
+                    log.info("Loaded {} buy limits from the Wiki", limits.size());
+                }
+                catch (Exception e)
+                {
+                    log.error("Error parsing item mapping", e);
+                    metrics.failed();
+                }
+                finally
+                {
+                    response.close();
+                    refreshing = false;
+                }
+
+                if (updated && onUpdated != null)
+                {
+                    onUpdated.run();
+                }
+            }
+        });
+    }
+
+    private BuyLimitTable loadBundled()
+    {
+        try (InputStream in = BuyLimitService.class.getResourceAsStream(BUNDLED_RESOURCE))
+        {
+            if (in == null)
+            {
+                log.warn("Bundled buy limits not found");
+                return BuyLimitTable.EMPTY;
+            }
+            try (JsonReader reader = gson.newJsonReader(new InputStreamReader(in, StandardCharsets.UTF_8)))
+            {
+                return BuyLimitTable.read(reader);
+            }
+        }
+        catch (Exception e)
+        {
+            log.warn("Failed to load bundled buy limits: {}", e.getMessage());
+            return BuyLimitTable.EMPTY;
+        }
+    }
+
+    /**
+     * Pick up the limits saved by the last refresh. The file's modification time is when they were fetched.
+     */
+    private void loadCached()
+    {
+        if (!CACHE_FILE.exists())
+        {
+            log.info("Using {} bundled buy limits", limits.size());
+            return;
+        }
+
+        try (JsonReader reader = gson.newJsonReader(new InputStreamReader(
+                new FileInputStream(CACHE_FILE), StandardCharsets.UTF_8)))
+        {
+            BuyLimitTable cached = BuyLimitTable.read(reader);
+            limits = cached.withFallback(bundled);
+            fetchedAt = CACHE_FILE.lastModified();
+            log.info("Loaded {} cached buy limits ({}h old)", limits.size(),
+                    TimeUnit.MILLISECONDS.toHours(System.currentTimeMillis() - fetchedAt));
+        }
+        catch (Exception e)
+        {
+            log.warn("Failed to load cached buy limits: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Write the fetched limits through a temp file and a rename, so a crash mid-write never leaves a torn cache
+     */
+    private void saveCached(BuyLimitTable fetched)
+    {
+        File tempFile = new File(CACHE_FILE.getPath() + ".tmp");
+        try (JsonWriter writer = gson.newJsonWriter(new OutputStreamWriter(
+                new FileOutputStream(tempFile), StandardCharsets.UTF_8)))
+        {
+            fetched.write(writer);
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to save buy limits: {}", e.getMessage());
+            return;
+        }
+
+        try
+        {
+            Files.move(tempFile.toPath(), CACHE_FILE.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to replace buy limit cache: {}", e.getMessage());
+        }
+    }
+}
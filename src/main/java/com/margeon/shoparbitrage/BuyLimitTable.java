@@ -0,0 +1,135 @@
+package com.margeon.shoparbitrage;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Immutable GE buy limits (per 4 hours), as a dense int array indexed by item ID.
+ *
+ * Item IDs top out in the low tens of thousands, so the array costs a little
+ * over 100KB, far less than a boxed map of the same entries, and a lookup is
+ * one bounds check and one array read. Unknown items have limit 0.
+ *
+ * Reads and writes the Wiki's /mapping format, a JSON array of
+ * {@code {"id": .., "limit": .., ...}} objects; any other fields are skipped.
+ */
+final class BuyLimitTable
+{
+    static final BuyLimitTable EMPTY = new BuyLimitTable(new int[0], 0);
+
+    private final int[] limits;
+    private final int size;
+
+    private BuyLimitTable(int[] limits, int size)
+    {
+        this.limits = limits;
+        this.size = size;
+    }
+
+    /**
+     * Buy limit for an item, 0 if unknown
+     */
+    int get(int itemId)
+    {
+        return itemId >= 0 && itemId < limits.length ? limits[itemId] : 0;
+    }
+
+    /**
+     * Number of items with a known limit
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * This table with the gaps filled in from another one. Limits in this table win.
+     */
+    BuyLimitTable withFallback(BuyLimitTable fallback)
+    {
+        int[] merged = Arrays.copyOf(limits, Math.max(limits.length, fallback.limits.length));
+        int count = 0;
+        for (int itemId = 0; itemId < merged.length; itemId++)
+        {
+            if (merged[itemId] == 0) merged[itemId] = fallback.get(itemId);
+            if (merged[itemId] > 0) count++;
+        }
+        return new BuyLimitTable(merged, count);
+    }
+
+    /**
+     * Read a /mapping style array. Entries without a positive limit or with an out of range ID are skipped.
+     */
+    static BuyLimitTable read(JsonReader reader) throws IOException
+    {
+        int[] limits = new int[32768];
+        int maxId = -1;
+        int count = 0;
+
+        reader.beginArray();
+        while (reader.hasNext())
+        {
+            int itemId = -1;
+            int limit = 0;
+
+            reader.beginObject();
+            while (reader.hasNext())
+            {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL)
+                {
+                    reader.nextNull();
+                }
+                else if ("id".equals(name))
+                {
+                    itemId = reader.nextInt();
+                }
+                else if ("limit".equals(name))
+                {
+                    limit = reader.nextInt();
+                }
+                else
+                {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            // Same bound as the price table: the array is sized by the largest ID
+            if (itemId < 0 || itemId > PriceTable.MAX_ITEM_ID || limit <= 0) continue;
+
+            if (itemId >= limits.length)
+            {
+                limits = Arrays.copyOf(limits, Math.max(limits.length * 2, itemId + 1));
+            }
+            if (limits[itemId] == 0) count++;
+            limits[itemId] = limit;
+            maxId = Math.max(maxId, itemId);
+        }
+        reader.endArray();
+
+        return new BuyLimitTable(Arrays.copyOf(limits, maxId + 1), count);
+    }
+
+    /**
+     * Write the known limits as a /mapping style array with only the id and limit fields
+     */
+    void write(JsonWriter writer) throws IOException
+    {
+        writer.beginArray();
+        for (int itemId = 0; itemId < limits.length; itemId++)
+        {
+            if (limits[itemId] <= 0) continue;
+
+            writer.beginObject();
+            writer.name("id").value(itemId);
+            writer.name("limit").value(limits[itemId]);
+            writer.endObject();
+        }
+        writer.endArray();
+    }
+}
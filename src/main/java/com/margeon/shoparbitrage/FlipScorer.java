@@ -5,6 +5,9 @@ import lombok.extern.slf4j.Slf4j;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.util.*;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Advanced flip scoring system that combines multiple factors
@@ -37,18 +40,38 @@ public class FlipScorer
     private static final double WEIGHT_RSI = 10.0;
     private static final double WEIGHT_ROI = 5.0;
 
+    private static final Comparator<FlipScore> BY_OVERALL_SCORE = Comparator.comparingDouble(s -> s.overallScore);
+
+    // Price table rows per fork/join leaf when scoring in parallel
+    private static final int SCORE_BATCH_SIZE = 512;
+
     private final WikiPriceService wikiPriceService;
     private final PriceHistoryService priceHistoryService;
-
-    // Buy limits cache (item ID -> buy limit per 4 hours)
-    private final Map<Integer, Integer> buyLimits = new HashMap<>();
+    private final AnalysisPool analysisPool;
+    private final ShopArbitrageConfigV2 config;
+    private final BuyLimitService buyLimitService;
+
+    // Live score table, rescored item by item from price change events once started
+    private final ScoreIndex liveScores = new ScoreIndex();
+    private final PriceChangeListener liveScoreListener = this::onPriceChange;
+
+    // Guarded by this. Rescoring runs as one drain at a time on the analysis pool,
+    // so an older rescore can never overwrite a newer one.
+    private boolean liveScoring;
+    private boolean needsFullScore;
+    private boolean draining;
+    private final Set<Integer> dirtyItems = new HashSet<>();
+    private final List<Runnable> afterDrain = new ArrayList<>();
 
     @Inject
-    public FlipScorer(WikiPriceService wikiPriceService, PriceHistoryService priceHistoryService)
+    public FlipScorer(WikiPriceService wikiPriceService, PriceHistoryService priceHistoryService,
+                      AnalysisPool analysisPool, ShopArbitrageConfigV2 config, BuyLimitService buyLimitService)
     {
         this.wikiPriceService = wikiPriceService;
         this.priceHistoryService = priceHistoryService;
-        initializeBuyLimits();
+        this.analysisPool = analysisPool;
+        this.config = config;
+        this.buyLimitService = buyLimitService;
     }
 
     /**
@@ -59,9 +82,11 @@ public class FlipScorer
      */
     public FlipScore calculateScore(int itemId)
     {
-        WikiPriceService.WikiPrice currentPrice = wikiPriceService.getPrice(itemId);
-        PriceHistoryService.ItemMetrics metrics = priceHistoryService.getMetrics(itemId);
+        return calculateScore(itemId, wikiPriceService.getPrice(itemId));
+    }
 
+    private FlipScore calculateScore(int itemId, WikiPriceService.WikiPrice currentPrice)
+    {
         FlipScore score = new FlipScore();
         score.itemId = itemId;
 
@@ -73,6 +98,9 @@ public class FlipScorer
             return score;
         }
 
+        // Metrics are calculated on demand, so only for items that got this far
+        PriceHistoryService.ItemMetrics metrics = priceHistoryService.getMetrics(itemId);
+
         // Calculate base metrics
         int rawMargin = currentPrice.high - currentPrice.low;
         int geTax = calculateGETax(currentPrice.high);
@@ -92,7 +120,7 @@ public class FlipScorer
         }
 
         // Get buy limit
-        score.buyLimit = buyLimits.getOrDefault(itemId, 0);
+        score.buyLimit = buyLimitService.getBuyLimit(itemId);
 
         // Calculate time to flip (hours to sell buy limit quantity)
         if (score.dailyVolume > 0 && score.buyLimit > 0)
@@ -126,10 +154,11 @@ public class FlipScorer
         score.volumeScore = Math.min(100, (score.dailyVolume / 100.0));
 
         // 3. Stability Score (0-100)
-        // Lower margin variability = more predictable profits
+        // Lower margin variability = more predictable profits.
+        // Based on the spread percentiles where possible, so one spike doesn't sink the score
         if (metrics != null)
         {
-            score.stabilityScore = Math.max(0, 100 - metrics.marginStability);
+            score.stabilityScore = Math.max(0, 100 - metrics.marginVariation());
         }
         else
         {
@@ -224,33 +253,327 @@ public class FlipScorer
      */
     public List<FlipScore> calculateAllScores(long minVolume, long maxPrice, int limit)
     {
-        Map<Integer, WikiPriceService.WikiPrice> allPrices = wikiPriceService.getAllPrices();
-        List<FlipScore> scores = new ArrayList<>();
+        return calculateAllScores(minVolume, maxPrice, limit, BY_OVERALL_SCORE);
+    }
+
+    /**
+     * Same as {@link #calculateAllScores(long, long, int)}, but keeping the top results by another key.
+     * Only the best {@code limit} scores are held while scanning, so memory doesn't grow with the market.
+     * With parallel analysis enabled the price table is split across the {@link AnalysisPool}, each
+     * leaf keeping its own top {@code limit}, and the partial results are merged on the way back up.
+     *
+     * @param order ascending order of the key; the scores that sort last are returned, best first
+     */
+    public List<FlipScore> calculateAllScores(long minVolume, long maxPrice, int limit, Comparator<FlipScore> order)
+    {
+        // Score against one snapshot so a refresh mid-scan can't mix old and new prices
+        PriceTable prices = wikiPriceService.getSnapshot().table;
+        ScanFilter filter = new ScanFilter(prices, minVolume, maxPrice, limit, order);
+
+        TopK<FlipScore> top;
+        if (config.parallelAnalysis() && prices.size() > SCORE_BATCH_SIZE)
+        {
+            top = analysisPool.invoke(new ScoreTask(filter, 0, prices.size()));
+        }
+        else
+        {
+            top = scoreRange(filter, 0, prices.size());
+        }
+        return top.drainDescending();
+    }
+
+    /**
+     * Run {@link #calculateAllScores(long, long, int)} on the analysis pool and hand the
+     * results to the callback there, so the calling thread (an HTTP callback, the EDT) isn't held up.
+     * If scoring fails the callback gets an empty list, so a waiting caller is never left hanging.
+     */
+    public void calculateAllScoresAsync(long minVolume, long maxPrice, int limit, Consumer<List<FlipScore>> callback)
+    {
+        analysisPool.execute(() -> {
+            List<FlipScore> scores;
+            try
+            {
+                scores = calculateAllScores(minVolume, maxPrice, limit);
+            }
+            catch (Exception e)
+            {
+                log.error("Error calculating flip scores", e);
+                scores = new ArrayList<>();
+            }
+            callback.accept(scores);
+        });
+    }
+
+    private TopK<FlipScore> scoreRange(ScanFilter filter, int from, int to)
+    {
+        PriceTable prices = filter.prices;
+        TopK<FlipScore> top = new TopK<>(filter.limit, filter.order);
+
+        for (int i = from; i < to; i++)
+        {
+            // Quick filters on the raw columns before full calculation
+            if (prices.low(i) > filter.maxPrice) continue;
+            if (prices.dailyVolume(i) < filter.minVolume) continue;
+
+            FlipScore score = scoreRow(prices, i);
+            if (score != null)
+            {
+                top.offer(score);
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Score one price table row. Returns null if it has no positive margin after tax,
+     * or isn't a decent opportunity.
+     */
+    private FlipScore scoreRow(PriceTable prices, int row)
+    {
+        int high = prices.high(row);
+        int low = prices.low(row);
+        if (low <= 0 || high <= 0) return null;
+
+        int netMargin = high - low - calculateGETax(high);
+        if (netMargin <= 0) return null;
+
+        FlipScore score = calculateScore(prices.itemId(row), prices.toWikiPrice(row));
+        return score.overallScore > 30 ? score : null; // Only include decent opportunities
+    }
+
+    /**
+     * Keep a live score table for every item, scored once in full and from then on only
+     * for the items named in price and history change events
+     */
+    public synchronized void startLiveScores()
+    {
+        if (liveScoring)
+        {
+            return;
+        }
+        liveScoring = true;
+        needsFullScore = true;
+        wikiPriceService.addPriceChangeListener(liveScoreListener);
+        priceHistoryService.addPriceChangeListener(liveScoreListener);
+        scheduleDrain();
+    }
+
+    public synchronized void stopLiveScores()
+    {
+        wikiPriceService.removePriceChangeListener(liveScoreListener);
+        priceHistoryService.removePriceChangeListener(liveScoreListener);
+        liveScoring = false;
+        needsFullScore = false;
+        dirtyItems.clear();
+        afterDrain.clear();
+        liveScores.clear();
+    }
+
+    /**
+     * Rescore every item in the live table, e.g. after the buy limits changed
+     */
+    public synchronized void rescoreAll()
+    {
+        if (liveScoring)
+        {
+            needsFullScore = true;
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * Hand the callback the best live scores (same filters as {@link #calculateAllScores(long, long, int)})
+     * once every change already reported has been rescored. Runs on the analysis pool.
+     * Falls back to a full scan if live scoring isn't running.
+     */
+    public void getLiveScoresAsync(long minVolume, long maxPrice, int limit, Consumer<List<FlipScore>> callback)
+    {
+        synchronized (this)
+        {
+            if (liveScoring)
+            {
+                afterDrain.add(() -> callback.accept(liveScores.top(
+                        score -> score.dailyVolume >= minVolume && score.buyPrice <= maxPrice, limit)));
+                scheduleDrain();
+                return;
+            }
+        }
+        calculateAllScoresAsync(minVolume, maxPrice, limit, callback);
+    }
 
-        for (Map.Entry<Integer, WikiPriceService.WikiPrice> entry : allPrices.entrySet())
+    private synchronized void onPriceChange(PriceChangeEvent event)
+    {
+        if (!liveScoring)
+        {
+            return;
+        }
+        for (int i = 0; i < event.size(); i++)
         {
-            WikiPriceService.WikiPrice price = entry.getValue();
+            dirtyItems.add(event.itemId(i));
+        }
+        scheduleDrain();
+    }
 
-            // Quick filters before full calculation
-            if (price.low <= 0 || price.high <= 0) continue;
-            if (price.low > maxPrice) continue;
-            if (price.getDailyVolume() < minVolume) continue;
+    // Caller holds the lock
+    private void scheduleDrain()
+    {
+        if (!draining)
+        {
+            draining = true;
+            analysisPool.execute(this::drain);
+        }
+    }
 
-            int netMargin = price.high - price.low - calculateGETax(price.high);
-            if (netMargin <= 0) continue;
+    /**
+     * Rescore whatever is dirty, then run the waiting callbacks, until nothing is left
+     */
+    private void drain()
+    {
+        boolean finished = false;
+        try
+        {
+            while (true)
+            {
+                boolean full;
+                int[] itemIds;
+                List<Runnable> callbacks;
+                synchronized (this)
+                {
+                    if (!needsFullScore && dirtyItems.isEmpty() && afterDrain.isEmpty())
+                    {
+                        draining = false;
+                        finished = true;
+                        return;
+                    }
+                    full = needsFullScore;
+                    needsFullScore = false;
+                    itemIds = full ? new int[0] : dirtyItems.stream().mapToInt(Integer::intValue).toArray();
+                    dirtyItems.clear();
+                    callbacks = new ArrayList<>(afterDrain);
+                    afterDrain.clear();
+                }
+
+                try
+                {
+                    if (full)
+                    {
+                        long start = System.nanoTime();
+                        List<FlipScore> all = calculateAllScores(0, Long.MAX_VALUE, Integer.MAX_VALUE);
+                        synchronized (this)
+                        {
+                            // Stopped while scoring: don't refill the table
+                            if (liveScoring) liveScores.replaceAll(all);
+                        }
+                        log.debug("Scored {} items in {}ms", liveScores.size(),
+                                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    }
+                    else
+                    {
+                        rescore(itemIds);
+                    }
+                }
+                catch (Exception e)
+                {
+                    // The callbacks below were taken off the queue, so they still get the last table
+                    log.error("Error rescoring flips", e);
+                }
+
+                for (Runnable callback : callbacks)
+                {
+                    try
+                    {
+                        callback.run();
+                    }
+                    catch (Exception e)
+                    {
+                        log.error("Error in flip score callback", e);
+                    }
+                }
+            }
+        }
+        finally
+        {
+            if (!finished)
+            {
+                synchronized (this)
+                {
+                    draining = false;
+                }
+            }
+        }
+    }
 
-            FlipScore score = calculateScore(entry.getKey());
-            if (score.overallScore > 30) // Only include decent opportunities
+    private void rescore(int[] itemIds)
+    {
+        PriceTable prices = wikiPriceService.getSnapshot().table;
+        for (int itemId : itemIds)
+        {
+            int row = prices.indexOf(itemId);
+            FlipScore score = row >= 0 ? scoreRow(prices, row) : null;
+            if (score != null)
             {
-                scores.add(score);
+                liveScores.put(score);
             }
+            else
+            {
+                liveScores.remove(itemId);
+            }
+        }
+    }
+
+    /**
+     * The snapshot and filters of one scan, shared by all of its tasks
+     */
+    private static final class ScanFilter
+    {
+        final PriceTable prices;
+        final long minVolume;
+        final long maxPrice;
+        final int limit;
+        final Comparator<FlipScore> order;
+
+        ScanFilter(PriceTable prices, long minVolume, long maxPrice, int limit, Comparator<FlipScore> order)
+        {
+            this.prices = prices;
+            this.minVolume = minVolume;
+            this.maxPrice = maxPrice;
+            this.limit = limit;
+            this.order = order;
         }
+    }
 
-        // Sort by overall score descending
-        scores.sort((a, b) -> Double.compare(b.overallScore, a.overallScore));
+    /**
+     * Splits a range of price table rows in half until it is small enough to score directly,
+     * then merges the two halves' top scores
+     */
+    private final class ScoreTask extends RecursiveTask<TopK<FlipScore>>
+    {
+        private final ScanFilter filter;
+        private final int from;
+        private final int to;
+
+        ScoreTask(ScanFilter filter, int from, int to)
+        {
+            this.filter = filter;
+            this.from = from;
+            this.to = to;
+        }
 
-        // Return top results
-        return scores.size() > limit ? scores.subList(0, limit) : scores;
+        @Override
+        protected TopK<FlipScore> compute()
+        {
+            if (to - from <= SCORE_BATCH_SIZE)
+            {
+                return scoreRange(filter, from, to);
+            }
+
+            int mid = (from + to) >>> 1;
+            ScoreTask left = new ScoreTask(filter, from, mid);
+            left.fork();
+            TopK<FlipScore> top = new ScoreTask(filter, mid, to).compute();
+            top.addAll(left.join());
+            return top;
+        }
     }
 
     private int calculateGETax(int sellPrice)
@@ -395,6 +718,23 @@ public class FlipScorer
             {
                 warnings.add("Trading volume declining");
             }
+            if (metrics.bollingerUpper > 0 && metrics.currentHigh > metrics.bollingerUpper)
+            {
+                warnings.add("Price above its upper Bollinger band");
+            }
+            if (metrics.currentDrawdown > 20)
+            {
+                warnings.add("Down " + (int) metrics.currentDrawdown + "% from its recent peak");
+            }
+            // Longer slides from the rolled-up history, which the 24h of 5m points can't see
+            if (metrics.weeklyChangePercent < -10)
+            {
+                warnings.add("Down " + (int) -metrics.weeklyChangePercent + "% over the past week");
+            }
+            else if (metrics.monthlyChangePercent < -20)
+            {
+                warnings.add("Down " + (int) -metrics.monthlyChangePercent + "% over the past month");
+            }
         }
 
         if (score.estimatedFlipTimeHours > 4)
@@ -405,158 +745,12 @@ public class FlipScorer
         return warnings;
     }
 
-    /**
-     * Initialize common buy limits
-     * In practice, you'd want to fetch these from a database or API
-     */
-    private void initializeBuyLimits()
-    {
-        // Common flipping items with their 4-hour buy limits
-        // This is a subset - in production, use a more complete database
-
-        // Bonds
-        buyLimits.put(13190, 5); // Old school bond
-
-        // Runes
-        buyLimits.put(554, 25000); // Fire rune
-        buyLimits.put(555, 25000); // Water rune
-        buyLimits.put(556, 25000); // Air rune
-        buyLimits.put(557, 25000); // Earth rune
-        buyLimits.put(558, 25000); // Mind rune
-        buyLimits.put(560, 18000); // Death rune
-        buyLimits.put(561, 18000); // Nature rune
-        buyLimits.put(562, 18000); // Chaos rune
-        buyLimits.put(563, 18000); // Law rune
-        buyLimits.put(564, 18000); // Cosmic rune
-        buyLimits.put(565, 11000); // Blood rune
-        buyLimits.put(566, 11000); // Soul rune
-        buyLimits.put(9075, 18000); // Astral rune
-        buyLimits.put(21880, 11000); // Wrath rune
-
-        // Herbs
-        buyLimits.put(199, 13000); // Grimy guam
-        buyLimits.put(201, 13000); // Grimy marrentill
-        buyLimits.put(203, 13000); // Grimy tarromin
-        buyLimits.put(205, 13000); // Grimy harralander
-        buyLimits.put(207, 13000); // Grimy ranarr
-        buyLimits.put(209, 13000); // Grimy irit
-        buyLimits.put(211, 13000); // Grimy avantoe
-        buyLimits.put(213, 13000); // Grimy kwuarm
-        buyLimits.put(215, 13000); // Grimy cadantine
-        buyLimits.put(217, 13000); // Grimy dwarf weed
-        buyLimits.put(219, 13000); // Grimy torstol
-        buyLimits.put(2485, 13000); // Grimy lantadyme
-
-        // Potions
-        buyLimits.put(2434, 2000); // Prayer potion(4)
-        buyLimits.put(3024, 2000); // Super restore(4)
-        buyLimits.put(2444, 2000); // Ranging potion(4)
-        buyLimits.put(2436, 2000); // Super attack(4)
-        buyLimits.put(2440, 2000); // Super strength(4)
-        buyLimits.put(2442, 2000); // Super defence(4)
-        buyLimits.put(12695, 2000); // Super combat potion(4)
-        buyLimits.put(3040, 2000); // Magic potion(4)
-        buyLimits.put(12625, 2000); // Stamina potion(4)
-        buyLimits.put(23373, 2000); // Divine super combat potion(4)
-
-        // Food
-        buyLimits.put(385, 13000); // Shark
-        buyLimits.put(3144, 13000); // Cooked karambwan
-        buyLimits.put(13441, 10000); // Anglerfish
-        buyLimits.put(6685, 10000); // Saradomin brew(4)
-        buyLimits.put(21510, 10000); // Dark crab
-        buyLimits.put(391, 13000); // Manta ray
-        buyLimits.put(7946, 13000); // Monkfish
-
-        // Bones
-        buyLimits.put(536, 13000); // Dragon bones
-        buyLimits.put(22124, 13000); // Superior dragon bones
-        buyLimits.put(11943, 13000); // Lava dragon bones
-        buyLimits.put(22783, 5000); // Hydra bones
-        buyLimits.put(6812, 7500); // Wyvern bones
-
-        // Scales
-        buyLimits.put(12934, 25000); // Zulrah's scales
-
-        // Ore/Bars
-        buyLimits.put(440, 25000); // Iron ore
-        buyLimits.put(453, 25000); // Coal
-        buyLimits.put(444, 25000); // Gold ore
-        buyLimits.put(447, 25000); // Mithril ore
-        buyLimits.put(449, 18000); // Adamantite ore
-        buyLimits.put(451, 11000); // Runite ore
-        buyLimits.put(2351, 13000); // Iron bar
-        buyLimits.put(2353, 13000); // Steel bar
-        buyLimits.put(2357, 11000); // Gold bar
-        buyLimits.put(2359, 11000); // Mithril bar
-        buyLimits.put(2361, 9000); // Adamantite bar
-        buyLimits.put(2363, 7000); // Runite bar
-
-        // Logs
-        buyLimits.put(1515, 25000); // Yew logs
-        buyLimits.put(1513, 11000); // Magic logs
-        buyLimits.put(19669, 7000); // Redwood logs
-
-        // Seeds
-        buyLimits.put(5295, 200); // Ranarr seed
-        buyLimits.put(5304, 200); // Snapdragon seed
-        buyLimits.put(5296, 200); // Torstol seed
-        buyLimits.put(22877, 200); // Dragonfruit tree seed
-
-        // High value equipment
-        buyLimits.put(4151, 8); // Abyssal whip
-        buyLimits.put(11802, 8); // Armadyl godsword
-        buyLimits.put(11804, 8); // Bandos godsword
-        buyLimits.put(11806, 8); // Saradomin godsword
-        buyLimits.put(11808, 8); // Zamorak godsword
-        buyLimits.put(11785, 8); // Armadyl crossbow
-        buyLimits.put(12002, 8); // Occult necklace
-        buyLimits.put(11832, 8); // Bandos chestplate
-        buyLimits.put(11834, 8); // Bandos tassets
-        buyLimits.put(11826, 8); // Armadyl helmet
-        buyLimits.put(11828, 8); // Armadyl chestplate
-        buyLimits.put(11830, 8); // Armadyl chainskirt
-        buyLimits.put(12825, 8); // Spectral spirit shield
-        buyLimits.put(12817, 8); // Arcane spirit shield
-        buyLimits.put(12821, 8); // Elysian spirit shield
-        buyLimits.put(13576, 8); // Dragon warhammer
-        buyLimits.put(22322, 8); // Scythe of vitur
-        buyLimits.put(22324, 8); // Ghrazi rapier
-        buyLimits.put(22326, 8); // Justiciar faceguard
-        buyLimits.put(22327, 8); // Justiciar chestguard
-        buyLimits.put(22328, 8); // Justiciar legguards
-        buyLimits.put(21006, 8); // Twisted bow
-        buyLimits.put(21018, 8); // Ancestral hat
-        buyLimits.put(21021, 8); // Ancestral robe top
-        buyLimits.put(21024, 8); // Ancestral robe bottom
-        buyLimits.put(21012, 8); // Dragon claws
-        buyLimits.put(22978, 8); // Hydra's claw (untradeable, but keeping for reference)
-        buyLimits.put(22981, 8); // Ferocious gloves
-        buyLimits.put(24268, 8); // Basilisk jaw
-        buyLimits.put(19544, 8); // Tormented bracelet
-        buyLimits.put(19547, 8); // Necklace of anguish
-        buyLimits.put(19553, 8); // Amulet of torture
-        buyLimits.put(19550, 8); // Ring of suffering
-        buyLimits.put(12924, 8); // Toxic blowpipe
-        buyLimits.put(12900, 8); // Serpentine helm
-        buyLimits.put(12927, 8); // Trident of the swamp
-        buyLimits.put(12929, 8); // Magma helm
-        buyLimits.put(12931, 8); // Tanzanite helm
-        buyLimits.put(24422, 8); // Sanguinesti staff
-        buyLimits.put(21003, 8); // Elder maul
-        buyLimits.put(20714, 8); // Dragonfire ward
-        buyLimits.put(11920, 8); // Dragon pickaxe
-
-        // Add more as needed...
-        log.info("Initialized {} buy limits", buyLimits.size());
-    }
-
     /**
      * Get buy limit for an item (returns 0 if unknown)
      */
     public int getBuyLimit(int itemId)
     {
-        return buyLimits.getOrDefault(itemId, 0);
+        return buyLimitService.getBuyLimit(itemId);
     }
 
     // === Data Classes ===
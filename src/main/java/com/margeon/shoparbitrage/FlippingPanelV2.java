@@ -823,40 +823,39 @@ public class FlippingPanelV2 extends PluginPanel
             priceHistoryService.fetchFiveMinuteData(() -> {
                 SwingUtilities.invokeLater(() -> scannerStatus.setText("Calculating predictions..."));
 
-                // Step 3: Calculate metrics
-                priceHistoryService.calculateAllMetrics();
-
-                // Step 4: Calculate scores for ALL items (we'll filter later)
+                // Step 3: Read scores for ALL items (we'll filter later) from the live score table,
+                // once the items these fetches changed have been rescored. Runs on the analysis pool
+                // so this HTTP callback thread is released straight away.
                 // Use very permissive initial filtering to get raw data
-                List<FlipScorer.FlipScore> allScores = flipScorer.calculateAllScores(
+                flipScorer.getLiveScoresAsync(
                         Math.min(minVolume, 100),  // Lower threshold for initial fetch
                         Math.max(maxPrice, 1000000000L),  // Higher threshold
-                        10000  // Get lots of results
-                );
-
-                // Step 5: Get item names on client thread
-                clientThread.invoke(() -> {
-                    for (FlipScorer.FlipScore score : allScores)
-                    {
-                        try
-                        {
-                            score.itemName = itemManager.getItemComposition(score.itemId).getName();
-                        }
-                        catch (Exception e)
-                        {
-                            score.itemName = "Unknown Item";
-                        }
-                    }
-
-                    // Store all results for filtering
-                    allFetchedResults = new ArrayList<>(allScores);
-
-                    // Step 6: Apply filters and update UI
-                    SwingUtilities.invokeLater(() -> {
-                        statsItemsScanned.setText("Scanned: " + allScores.size());
-                        applyFiltersAndSort();
-                    });
-                });
+                        10000,  // Get lots of results
+                        allScores -> {
+                            // Step 4: Get item names on client thread
+                            clientThread.invoke(() -> {
+                                for (FlipScorer.FlipScore score : allScores)
+                                {
+                                    try
+                                    {
+                                        score.itemName = itemManager.getItemComposition(score.itemId).getName();
+                                    }
+                                    catch (Exception e)
+                                    {
+                                        score.itemName = "Unknown Item";
+                                    }
+                                }
+
+                                // Store all results for filtering
+                                allFetchedResults = new ArrayList<>(allScores);
+
+                                // Step 5: Apply filters and update UI
+                                SwingUtilities.invokeLater(() -> {
+                                    statsItemsScanned.setText("Scanned: " + allScores.size());
+                                    applyFiltersAndSort();
+                                });
+                            });
+                        });
             });
         });
     }
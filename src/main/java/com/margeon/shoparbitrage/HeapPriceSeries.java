@@ -0,0 +1,158 @@
+package com.margeon.shoparbitrage;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link PriceSeries} ring buffer on the Java heap, with each field in its own primitive array.
+ */
+public final class HeapPriceSeries implements PriceSeries
+{
+    // Arrays start small and double until they reach capacity, so sparse series stay small
+    private static final int INITIAL_SLOTS = 16;
+
+    private final int capacity;
+    private long[] timestamps;
+    private int[] high;
+    private int[] low;
+    private long[] highVolume;
+    private long[] lowVolume;
+
+    private int start; // physical slot of the oldest point
+    private int size;
+
+    public HeapPriceSeries(int capacity)
+    {
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+
+        this.capacity = capacity;
+        allocate(Math.min(capacity, INITIAL_SLOTS));
+    }
+
+    private void allocate(int slots)
+    {
+        // Only called before the buffer has wrapped, so the points are in slots 0 to size - 1
+        timestamps = timestamps == null ? new long[slots] : Arrays.copyOf(timestamps, slots);
+        high = high == null ? new int[slots] : Arrays.copyOf(high, slots);
+        low = low == null ? new int[slots] : Arrays.copyOf(low, slots);
+        highVolume = highVolume == null ? new long[slots] : Arrays.copyOf(highVolume, slots);
+        lowVolume = lowVolume == null ? new long[slots] : Arrays.copyOf(lowVolume, slots);
+    }
+
+    /**
+     * Build a series from a list of points (oldest first). Only the newest capacity points are kept.
+     */
+    public static HeapPriceSeries fromPricePoints(List<PriceHistoryService.PricePoint> points, int capacity)
+    {
+        HeapPriceSeries series = new HeapPriceSeries(capacity);
+        for (PriceHistoryService.PricePoint point : points)
+        {
+            if (point != null)
+            {
+                series.add(point.timestamp, point.avgHighPrice, point.avgLowPrice,
+                        point.highPriceVolume, point.lowPriceVolume);
+            }
+        }
+        return series;
+    }
+
+    @Override
+    public synchronized void add(long timestamp, int avgHigh, int avgLow, long highVol, long lowVol)
+    {
+        int slot;
+        if (size < capacity)
+        {
+            if (size == timestamps.length)
+            {
+                allocate(Math.min(capacity, size * 2));
+            }
+            slot = (start + size) % timestamps.length;
+            size++;
+        }
+        else
+        {
+            slot = start;
+            start = (start + 1) % capacity;
+        }
+
+        timestamps[slot] = timestamp;
+        high[slot] = avgHigh;
+        low[slot] = avgLow;
+        highVolume[slot] = highVol;
+        lowVolume[slot] = lowVol;
+    }
+
+    @Override
+    public synchronized void clear()
+    {
+        start = 0;
+        size = 0;
+    }
+
+    @Override
+    public int capacity()
+    {
+        return capacity;
+    }
+
+    @Override
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    @Override
+    public synchronized boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    @Override
+    public long timestamp(int index)
+    {
+        return timestamps[slot(index)];
+    }
+
+    @Override
+    public int high(int index)
+    {
+        return high[slot(index)];
+    }
+
+    @Override
+    public int low(int index)
+    {
+        return low[slot(index)];
+    }
+
+    @Override
+    public long highVolume(int index)
+    {
+        return highVolume[slot(index)];
+    }
+
+    @Override
+    public long lowVolume(int index)
+    {
+        return lowVolume[slot(index)];
+    }
+
+    @Override
+    public long totalVolume(int index)
+    {
+        int slot = slot(index);
+        return highVolume[slot] + lowVolume[slot];
+    }
+
+    private int slot(int index)
+    {
+        if (index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        return (start + index) % timestamps.length;
+    }
+}
@@ -0,0 +1,249 @@
+package com.margeon.shoparbitrage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fills in price history for the most promising items right after startup.
+ *
+ * A fresh install has no 5m/1h history, so trend, RSI and stability would sit
+ * at neutral for the first day. Once the first 24h prices are available this
+ * picks the top {@code backfillItems} items by daily volume x margin and
+ * fetches their 5m, 1h and 6h timeseries, which
+ * {@link PriceHistoryService#fetchTimeSeries} merges into the history.
+ * Items that already have at least half a buffer of history are skipped.
+ *
+ * At most {@link #MAX_CONCURRENT} requests are in flight, and all of them
+ * draw from one token bucket so the Wiki API sees a steady trickle rather
+ * than a burst of a few hundred requests.
+ */
+@Slf4j
+@Singleton
+public class HistoryBackfill implements PriceChangeListener
+{
+    private static final String[] TIMESTEPS = {"5m", "1h", "6h"};
+    private static final int MAX_CONCURRENT = 4;
+    private static final int BURST = 4;
+    private static final double REQUESTS_PER_SECOND = 2;
+
+    private final WikiPriceService wikiPriceService;
+    private final PriceHistoryService priceHistoryService;
+    private final ScheduledExecutorService executor;
+    private final ShopArbitrageConfigV2 config;
+
+    private final TokenBucket rateLimiter = new TokenBucket(BURST, REQUESTS_PER_SECOND);
+    private final Semaphore permits = new Semaphore(MAX_CONCURRENT);
+
+    // Guarded by this
+    private final Deque<Job> queue = new ArrayDeque<>();
+    private boolean started;
+    private int generation;
+    private int pending;
+    private int failed;
+    private long startedAt;
+
+    @Inject
+    public HistoryBackfill(WikiPriceService wikiPriceService, PriceHistoryService priceHistoryService,
+                           ScheduledExecutorService executor, ShopArbitrageConfigV2 config)
+    {
+        this.wikiPriceService = wikiPriceService;
+        this.priceHistoryService = priceHistoryService;
+        this.executor = executor;
+        this.config = config;
+    }
+
+    /**
+     * Run the backfill once, as soon as 24h prices are available
+     */
+    public synchronized void start()
+    {
+        if (started)
+        {
+            return;
+        }
+        started = true;
+
+        if (wikiPriceService.getSnapshot().table.size() > 0)
+        {
+            executor.execute(this::begin);
+        }
+        else
+        {
+            wikiPriceService.addPriceChangeListener(this);
+        }
+    }
+
+    /**
+     * Cancel anything not yet sent. Requests already in flight finish but are not followed up.
+     */
+    public synchronized void stop()
+    {
+        wikiPriceService.removePriceChangeListener(this);
+        queue.clear();
+        generation++;
+        pending = 0;
+        started = false;
+    }
+
+    @Override
+    public void onPriceChange(PriceChangeEvent event)
+    {
+        if (event.getSource() == PriceChangeEvent.Source.DAILY)
+        {
+            wikiPriceService.removePriceChangeListener(this);
+            executor.execute(this::begin);
+        }
+    }
+
+    private synchronized void begin()
+    {
+        if (!started || !queue.isEmpty() || pending > 0)
+        {
+            return;
+        }
+
+        List<Integer> candidates = pickCandidates(config.backfillItems());
+        for (int itemId : candidates)
+        {
+            for (String timestep : TIMESTEPS)
+            {
+                if (priceHistoryService.needsBackfill(itemId, timestep))
+                {
+                    queue.add(new Job(generation, itemId, timestep));
+                }
+            }
+        }
+
+        if (queue.isEmpty())
+        {
+            log.debug("No price history to backfill");
+            return;
+        }
+
+        pending = queue.size();
+        failed = 0;
+        startedAt = System.currentTimeMillis();
+        log.info("Backfilling price history: {} timeseries for {} items", pending, candidates.size());
+        pump();
+    }
+
+    /**
+     * Top items by daily volume x margin in the current 24h snapshot, best first
+     */
+    private List<Integer> pickCandidates(int limit)
+    {
+        List<Integer> result = new ArrayList<>();
+        if (limit <= 0)
+        {
+            return result;
+        }
+
+        PriceTable prices = wikiPriceService.getSnapshot().table;
+        TopK<Candidate> top = new TopK<>(limit, Comparator.comparingDouble(c -> c.value));
+        for (int i = 0; i < prices.size(); i++)
+        {
+            int high = prices.high(i);
+            int low = prices.low(i);
+            long volume = prices.dailyVolume(i);
+            if (low <= 0 || high <= low || volume <= 0) continue;
+
+            top.offer(new Candidate(prices.itemId(i), (double) (high - low) * volume));
+        }
+
+        for (Candidate candidate : top.drainDescending())
+        {
+            result.add(candidate.itemId);
+        }
+        return result;
+    }
+
+    /**
+     * Send as many queued requests as the concurrency limit allows, each at its rate-limited time
+     */
+    private synchronized void pump()
+    {
+        while (!queue.isEmpty() && permits.tryAcquire())
+        {
+            Job job = queue.poll();
+            long delayMs = rateLimiter.reserve();
+            executor.schedule(() -> send(job), delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void send(Job job)
+    {
+        synchronized (this)
+        {
+            if (job.generation != generation)
+            {
+                permits.release();
+                return;
+            }
+        }
+
+        priceHistoryService.fetchTimeSeries(job.itemId, job.timestep,
+                () -> finished(job, true), () -> finished(job, false));
+    }
+
+    private void finished(Job job, boolean success)
+    {
+        permits.release();
+        synchronized (this)
+        {
+            if (job.generation != generation)
+            {
+                return;
+            }
+
+            if (!success)
+            {
+                failed++;
+            }
+
+            if (--pending > 0)
+            {
+                pump();
+                return;
+            }
+
+            log.info("Price history backfill finished in {}s ({} failed)",
+                    TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - startedAt), failed);
+        }
+    }
+
+    private static final class Job
+    {
+        final int generation;
+        final int itemId;
+        final String timestep;
+
+        Job(int generation, int itemId, String timestep)
+        {
+            this.generation = generation;
+            this.itemId = itemId;
+            this.timestep = timestep;
+        }
+    }
+
+    private static final class Candidate
+    {
+        final int itemId;
+        final double value;
+
+        Candidate(int itemId, double value)
+        {
+            this.itemId = itemId;
+            this.value = value;
+        }
+    }
+}
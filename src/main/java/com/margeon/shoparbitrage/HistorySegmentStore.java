@@ -0,0 +1,394 @@
+package com.margeon.shoparbitrage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary persistence for the heap-resident price history: a compacted snapshot plus an append-only log.
+ *
+ * Every ingested feed is appended to the log as one batch (resolution,
+ * timestamp, then one 28-byte row per item), so nothing has to be written at
+ * shutdown. Once the log passes {@link #COMPACT_AFTER_BYTES} the current
+ * series are written out as a new snapshot - to a temp file, then atomically
+ * renamed over the old one - and the log is truncated. On startup the
+ * snapshot is read column by column with bulk NIO reads and the log is
+ * replayed on top of it.
+ *
+ * Snapshot layout: magic, format, savedAt, then for each resolution a
+ * resolution byte, series count and per series: item ID, point count and
+ * the timestamp, high, low, high volume and low volume columns.
+ */
+@Slf4j
+final class HistorySegmentStore
+{
+    static final byte FIVE_MINUTE = 1;
+    static final byte ONE_HOUR = 2;
+    static final byte SIX_HOUR = 3;
+    static final byte ONE_DAY = 4;
+
+    private static final int MAGIC = 0x50485347; // "PHSG"
+    private static final int FORMAT = 1;
+
+    // Bytes per log row: item ID, high, low, high volume, low volume
+    private static final int ROW_BYTES = 3 * Integer.BYTES + 2 * Long.BYTES;
+    private static final int BATCH_HEADER_BYTES = 1 + Long.BYTES + Integer.BYTES;
+
+    // Bytes per snapshot point: timestamp, high, low, high volume, low volume
+    private static final int POINT_BYTES = 3 * Long.BYTES + 2 * Integer.BYTES;
+
+    private static final long COMPACT_AFTER_BYTES = 16L * 1024 * 1024;
+
+    // Sanity bounds for values read back from disk
+    private static final int MAX_ITEM_ID = 1 << 20;
+    private static final int MAX_POINTS = 1 << 16;
+
+    private final File snapshotFile;
+    private final File logFile;
+
+    /**
+     * Receives every point read back by {@link #load}, oldest first per item
+     */
+    @FunctionalInterface
+    interface PointSink
+    {
+        void accept(byte resolution, int itemId, long timestamp, int high, int low, long highVolume, long lowVolume);
+    }
+
+    HistorySegmentStore(File snapshotFile, File logFile)
+    {
+        this.snapshotFile = snapshotFile;
+        this.logFile = logFile;
+    }
+
+    /**
+     * True if there is a snapshot or log to load
+     */
+    boolean exists()
+    {
+        return snapshotFile.exists() || logFile.exists();
+    }
+
+    /**
+     * Read the snapshot, then replay the log. Retention is up to the sink: each tier keeps a different span.
+     */
+    synchronized void load(PointSink sink) throws IOException
+    {
+        if (snapshotFile.exists())
+        {
+            readSnapshot(readFully(snapshotFile), sink);
+        }
+
+        if (logFile.exists())
+        {
+            ByteBuffer in = readFully(logFile);
+            int validBytes = replayLog(in, sink);
+            if (validBytes < in.limit())
+            {
+                // Cut off the torn tail so the next append doesn't land behind it
+                log.debug("Truncating {} bytes of damaged history log", in.limit() - validBytes);
+                try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE))
+                {
+                    channel.truncate(validBytes);
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer readFully(File file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+            {
+                throw new IOException(file.getName() + " is too large (" + size + " bytes)");
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+            {
+                // keep reading
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    private static void readSnapshot(ByteBuffer in, PointSink sink) throws IOException
+    {
+        if (in.remaining() < 16 || in.getInt() != MAGIC || in.getInt() != FORMAT)
+        {
+            throw new IOException("Not a price history snapshot");
+        }
+        in.getLong(); // savedAt
+
+        long[] timestamps = new long[0];
+        int[] high = new int[0];
+        int[] low = new int[0];
+        long[] highVolume = new long[0];
+        long[] lowVolume = new long[0];
+
+        while (in.remaining() >= 5)
+        {
+            byte resolution = in.get();
+            if (!isKnownResolution(resolution))
+            {
+                throw new IOException("Corrupt price history snapshot (resolution " + resolution + ")");
+            }
+            int seriesCount = in.getInt();
+            for (int s = 0; s < seriesCount; s++)
+            {
+                int itemId = in.getInt();
+                int count = in.getInt();
+                if (itemId < 0 || itemId > MAX_ITEM_ID || count < 0 || count > MAX_POINTS
+                        || (long) count * POINT_BYTES > in.remaining())
+                {
+                    throw new IOException("Corrupt price history snapshot (item " + itemId + ", " + count + " points)");
+                }
+
+                if (timestamps.length < count)
+                {
+                    timestamps = new long[count];
+                    high = new int[count];
+                    low = new int[count];
+                    highVolume = new long[count];
+                    lowVolume = new long[count];
+                }
+
+                readLongs(in, timestamps, count);
+                readInts(in, high, count);
+                readInts(in, low, count);
+                readLongs(in, highVolume, count);
+                readLongs(in, lowVolume, count);
+
+                for (int i = 0; i < count; i++)
+                {
+                    sink.accept(resolution, itemId, timestamps[i], high[i], low[i], highVolume[i], lowVolume[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replay complete batches from the log. Stops at the first torn or corrupt batch (e.g. from a
+     * crash mid-write), and skips rows whose item ID is out of range.
+     *
+     * @return the length of the log up to the end of the last good batch
+     */
+    private int replayLog(ByteBuffer in, PointSink sink)
+    {
+        int batches = 0;
+        int validBytes = 0;
+        while (in.remaining() >= BATCH_HEADER_BYTES)
+        {
+            byte resolution = in.get();
+            long timestamp = in.getLong();
+            int rows = in.getInt();
+            if (!isKnownResolution(resolution) || rows < 0 || (long) rows * ROW_BYTES > in.remaining())
+            {
+                log.debug("Ignoring incomplete or corrupt batch at the end of the history log");
+                break;
+            }
+
+            for (int i = 0; i < rows; i++)
+            {
+                int itemId = in.getInt();
+                int high = in.getInt();
+                int low = in.getInt();
+                long highVolume = in.getLong();
+                long lowVolume = in.getLong();
+                if (itemId < 0 || itemId > MAX_ITEM_ID) continue;
+
+                sink.accept(resolution, itemId, timestamp, high, low, highVolume, lowVolume);
+            }
+            batches++;
+            validBytes = in.position();
+        }
+
+        log.debug("Replayed {} history batches from {}", batches, logFile.getName());
+        return validBytes;
+    }
+
+    private static boolean isKnownResolution(byte resolution)
+    {
+        return resolution == FIVE_MINUTE || resolution == ONE_HOUR || resolution == SIX_HOUR || resolution == ONE_DAY;
+    }
+
+    private static void readInts(ByteBuffer in, int[] column, int count)
+    {
+        in.asIntBuffer().get(column, 0, count);
+        in.position(in.position() + count * Integer.BYTES);
+    }
+
+    private static void readLongs(ByteBuffer in, long[] column, int count)
+    {
+        in.asLongBuffer().get(column, 0, count);
+        in.position(in.position() + count * Long.BYTES);
+    }
+
+    /**
+     * Start a batch of points that all share one timestamp (one feed fetch)
+     */
+    static Batch newBatch(byte resolution, long timestamp, int expectedRows)
+    {
+        return new Batch(resolution, timestamp, expectedRows);
+    }
+
+    /**
+     * Append a batch to the log.
+     *
+     * @return true if the log has grown large enough that it should be compacted
+     */
+    synchronized boolean append(Batch batch) throws IOException
+    {
+        if (batch.rows == 0)
+        {
+            return false;
+        }
+
+        ByteBuffer out = batch.finish();
+        try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND))
+        {
+            while (out.hasRemaining())
+            {
+                channel.write(out);
+            }
+            return channel.size() > COMPACT_AFTER_BYTES;
+        }
+    }
+
+    /**
+     * Write the given series as a new snapshot and truncate the log
+     */
+    synchronized void compact(Map<Byte, Map<Integer, PriceSeries>> history) throws IOException
+    {
+        File tempFile = new File(snapshotFile.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            ByteBuffer header = ByteBuffer.allocate(16);
+            header.putInt(MAGIC).putInt(FORMAT).putLong(System.currentTimeMillis()).flip();
+            writeFully(channel, header);
+
+            for (Map.Entry<Byte, Map<Integer, PriceSeries>> resolution : history.entrySet())
+            {
+                writeResolution(channel, resolution.getKey(), resolution.getValue());
+            }
+            channel.force(false);
+        }
+
+        Files.move(tempFile.toPath(), snapshotFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(logFile.toPath());
+        log.debug("Compacted price history into {} ({} KB)", snapshotFile.getName(), snapshotFile.length() / 1024);
+    }
+
+    private static void writeResolution(FileChannel channel, byte resolution, Map<Integer, PriceSeries> series) throws IOException
+    {
+        // Copy the entries first so the count in the header matches what gets written
+        List<Map.Entry<Integer, PriceSeries>> entries = new ArrayList<>(series.entrySet());
+
+        ByteBuffer header = ByteBuffer.allocate(5);
+        header.put(resolution).putInt(entries.size()).flip();
+        writeFully(channel, header);
+
+        ByteBuffer out = ByteBuffer.allocate(0);
+        for (Map.Entry<Integer, PriceSeries> entry : entries)
+        {
+            PriceSeries points = entry.getValue();
+            synchronized (points)
+            {
+                int count = points.size();
+                int bytes = 2 * Integer.BYTES + count * POINT_BYTES;
+                if (out.capacity() < bytes)
+                {
+                    out = ByteBuffer.allocate(bytes);
+                }
+                out.clear();
+
+                out.putInt(entry.getKey()).putInt(count);
+                for (int i = 0; i < count; i++) out.putLong(points.timestamp(i));
+                for (int i = 0; i < count; i++) out.putInt(points.high(i));
+                for (int i = 0; i < count; i++) out.putInt(points.low(i));
+                for (int i = 0; i < count; i++) out.putLong(points.highVolume(i));
+                for (int i = 0; i < count; i++) out.putLong(points.lowVolume(i));
+            }
+            out.flip();
+            writeFully(channel, out);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Rows for one log batch, encoded as they are added
+     */
+    static final class Batch
+    {
+        private final byte resolution;
+        private final long timestamp;
+        private ByteBuffer buffer;
+        private int rows;
+
+        private Batch(byte resolution, long timestamp, int expectedRows)
+        {
+            this.resolution = resolution;
+            this.timestamp = timestamp;
+            buffer = ByteBuffer.allocate(BATCH_HEADER_BYTES + Math.max(expectedRows, 16) * ROW_BYTES);
+            buffer.put(resolution).putLong(timestamp).putInt(0);
+        }
+
+        void add(int itemId, int high, int low, long highVolume, long lowVolume)
+        {
+            if (buffer.remaining() < ROW_BYTES)
+            {
+                ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+            buffer.putInt(itemId).putInt(high).putInt(low).putLong(highVolume).putLong(lowVolume);
+            rows++;
+        }
+
+        byte resolution()
+        {
+            return resolution;
+        }
+
+        long timestamp()
+        {
+            return timestamp;
+        }
+
+        int size()
+        {
+            return rows;
+        }
+
+        private ByteBuffer finish()
+        {
+            buffer.putInt(1 + Long.BYTES, rows);
+            ByteBuffer out = buffer.duplicate();
+            out.flip();
+            return out;
+        }
+    }
+}
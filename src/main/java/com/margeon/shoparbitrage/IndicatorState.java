@@ -0,0 +1,485 @@
+package com.margeon.shoparbitrage;
+
+/**
+ * Running indicator state for one price series, updated in O(1) per appended point.
+ *
+ * Whole-window statistics (volatility, trend regression, margin stability,
+ * VWAP) keep rolling sums that the oldest point is subtracted from when the
+ * ring buffer evicts it; the short windows (RSI, SMA12/24, Bollinger bands)
+ * add the newest point and drop the one that just fell out of the window, and
+ * the EMAs behind MACD just fold in the newest point. Turning the state into
+ * {@link PriceHistoryService.ItemMetrics} is O(1) as well, except for max
+ * drawdown: it can't be un-done when a point is evicted, so after an eviction
+ * it is recomputed with one pass over the high prices the next time it's read.
+ *
+ * The state mirrors the size and newest timestamp of its series. If the
+ * series was changed behind its back (restored from disk, backfilled) it is
+ * rebuilt with one pass over the series. It is also rebuilt once every
+ * series-capacity appends so floating point drift from the rolling variance
+ * can't build up.
+ *
+ * Not thread-safe: callers hold the series lock, as for any other multi-point read.
+ */
+final class IndicatorState
+{
+    private static final int RSI_PERIODS = 14;
+    private static final int SMA_SHORT_PERIODS = 12;
+    private static final int SMA_LONG_PERIODS = 24;
+    private static final int EMA_PERIODS = 12;
+    private static final double EMA_MULTIPLIER = 2.0 / (EMA_PERIODS + 1);
+    private static final int BOLLINGER_PERIODS = 20;
+    private static final double BOLLINGER_WIDTH = 2;
+    private static final int MACD_SLOW_PERIODS = 26;
+    private static final int MACD_SIGNAL_PERIODS = 9;
+    private static final double MACD_SLOW_MULTIPLIER = 2.0 / (MACD_SLOW_PERIODS + 1);
+    private static final double MACD_SIGNAL_MULTIPLIER = 2.0 / (MACD_SIGNAL_PERIODS + 1);
+
+    // Points in the window and the newest timestamp, to detect changes made without us
+    private int count;
+    private long lastTimestamp;
+    private int appendsSinceRebuild;
+
+    // Linear regression of high price against position in the window; exact integer sums
+    private long sumHigh;
+    private long sumIndexHigh;
+
+    // Period-over-period returns of the high price, and high - low margins
+    private final RollingStats returns = new RollingStats();
+    private final RollingStats margins = new RollingStats();
+    private long marginSum;
+
+    // Gains and losses of the last RSI_PERIODS changes of the high price
+    private long gainSum;
+    private long lossSum;
+
+    private long smaShortSum;
+    private long smaLongSum;
+
+    // High prices of the last BOLLINGER_PERIODS points
+    private final RollingStats bands = new RollingStats();
+
+    // ema is also the fast EMA of the MACD
+    private double ema;
+    private double emaSlow;
+    private double macdSignal;
+    private boolean emaSeeded;
+
+    // Volume-weighted average price over the window
+    private double vwapValue;
+    private long vwapVolume;
+
+    // Highest high so far and the deepest fall from it, as a fraction of the peak
+    private int peak;
+    private double maxDrawdown;
+    private boolean drawdownStale;
+
+    /**
+     * Build the state for everything currently in a series
+     */
+    static IndicatorState of(PriceSeries series)
+    {
+        IndicatorState state = new IndicatorState();
+        state.rebuild(series);
+        return state;
+    }
+
+    /**
+     * True if the series has had points added or evicted that this state hasn't seen
+     */
+    boolean isStale(PriceSeries series)
+    {
+        int size = series.size();
+        return size != count || (size > 0 && series.timestamp(size - 1) != lastTimestamp);
+    }
+
+    /**
+     * Append a point to the series and fold it into the state
+     */
+    void append(PriceSeries series, long timestamp, int avgHigh, int avgLow, long highVol, long lowVol)
+    {
+        if (isStale(series) || ++appendsSinceRebuild >= series.capacity())
+        {
+            series.add(timestamp, avgHigh, avgLow, highVol, lowVol);
+            rebuild(series);
+            return;
+        }
+
+        boolean evicting = series.size() == series.capacity();
+        int evictedHigh = evicting ? series.high(0) : 0;
+        int evictedLow = evicting ? series.low(0) : 0;
+        long evictedHighVol = evicting ? series.highVolume(0) : 0;
+        long evictedLowVol = evicting ? series.lowVolume(0) : 0;
+        int nextHigh = evicting && series.size() > 1 ? series.high(1) : 0;
+
+        series.add(timestamp, avgHigh, avgLow, highVol, lowVol);
+
+        if (evicting)
+        {
+            evict(evictedHigh, evictedLow, evictedHighVol, evictedLowVol, nextHigh);
+        }
+        push(series, count + 1);
+    }
+
+    private void rebuild(PriceSeries series)
+    {
+        count = 0;
+        lastTimestamp = 0;
+        appendsSinceRebuild = 0;
+        sumHigh = 0;
+        sumIndexHigh = 0;
+        returns.clear();
+        margins.clear();
+        marginSum = 0;
+        gainSum = 0;
+        lossSum = 0;
+        smaShortSum = 0;
+        smaLongSum = 0;
+        bands.clear();
+        ema = 0;
+        emaSlow = 0;
+        macdSignal = 0;
+        emaSeeded = false;
+        vwapValue = 0;
+        vwapVolume = 0;
+        peak = 0;
+        maxDrawdown = 0;
+        drawdownStale = false;
+
+        int size = series.size();
+        for (int n = 1; n <= size; n++)
+        {
+            push(series, n);
+        }
+    }
+
+    /**
+     * Drop the oldest point from the whole-window sums. Every remaining point moves down one position.
+     */
+    private void evict(int high, int low, long highVol, long lowVol, int nextHigh)
+    {
+        sumHigh -= high;
+        sumIndexHigh -= sumHigh;
+        if (count > 1 && high > 0)
+        {
+            returns.remove((double) (nextHigh - high) / high);
+        }
+        margins.remove(high - low);
+        marginSum -= high - low;
+        addTrade(high, highVol, -1);
+        addTrade(low, lowVol, -1);
+        drawdownStale = true;
+        count--;
+    }
+
+    /**
+     * Fold in the point at index n - 1, treating the first n points of the series as the window
+     */
+    private void push(PriceSeries series, int n)
+    {
+        int newest = n - 1;
+        int high = series.high(newest);
+        int low = series.low(newest);
+        addTrade(high, series.highVolume(newest), 1);
+        addTrade(low, series.lowVolume(newest), 1);
+
+        sumHigh += high;
+        sumIndexHigh += (long) newest * high;
+        margins.add(high - low);
+        marginSum += high - low;
+
+        if (n >= 2)
+        {
+            int previousHigh = series.high(newest - 1);
+            if (previousHigh > 0)
+            {
+                returns.add((double) (high - previousHigh) / previousHigh);
+            }
+
+            addChange(high - previousHigh, 1);
+            // The change that just left the RSI window
+            int leaving = n - 1 - RSI_PERIODS;
+            if (leaving >= 1)
+            {
+                addChange(series.high(leaving) - series.high(leaving - 1), -1);
+            }
+        }
+
+        smaShortSum += high;
+        if (n > SMA_SHORT_PERIODS) smaShortSum -= series.high(n - 1 - SMA_SHORT_PERIODS);
+        smaLongSum += high;
+        if (n > SMA_LONG_PERIODS) smaLongSum -= series.high(n - 1 - SMA_LONG_PERIODS);
+        bands.add(high);
+        if (n > BOLLINGER_PERIODS) bands.remove(series.high(n - 1 - BOLLINGER_PERIODS));
+
+        if (emaSeeded)
+        {
+            ema += (high - ema) * EMA_MULTIPLIER;
+            emaSlow += (high - emaSlow) * MACD_SLOW_MULTIPLIER;
+            macdSignal += (ema - emaSlow - macdSignal) * MACD_SIGNAL_MULTIPLIER;
+        }
+        else
+        {
+            ema = high;
+            emaSlow = high;
+            emaSeeded = true;
+        }
+
+        trackDrawdown(high);
+
+        count = n;
+        lastTimestamp = series.timestamp(newest);
+    }
+
+    private void addTrade(int price, long volume, int sign)
+    {
+        if (price > 0 && volume > 0)
+        {
+            vwapValue += sign * (double) price * volume;
+            vwapVolume += sign * volume;
+        }
+    }
+
+    private void addChange(long change, int sign)
+    {
+        if (change > 0)
+        {
+            gainSum += sign * change;
+        }
+        else
+        {
+            lossSum -= sign * change;
+        }
+    }
+
+    /**
+     * Fill in the indicator fields of metrics. The series must be the one this state tracks.
+     */
+    void fill(PriceSeries series, PriceHistoryService.ItemMetrics metrics)
+    {
+        if (isStale(series))
+        {
+            rebuild(series);
+        }
+
+        int size = count;
+        if (size < 2)
+        {
+            return;
+        }
+
+        // Current prices (most recent)
+        int latest = size - 1;
+        int latestHigh = series.high(latest);
+        int latestLow = series.low(latest);
+        metrics.currentHigh = latestHigh;
+        metrics.currentLow = latestLow;
+        metrics.currentMargin = latestHigh - latestLow;
+        metrics.currentVolume = series.totalVolume(latest);
+
+        if (latestLow > 0)
+        {
+            metrics.spreadPercent = (double) metrics.currentMargin / latestLow * 100;
+        }
+
+        // Price changes
+        if (size >= 12) // At least 1 hour of 5-min data
+        {
+            int hourAgoHigh = series.high(size - 12);
+            metrics.priceChange1h = latestHigh - hourAgoHigh;
+            metrics.priceChangePercent1h = hourAgoHigh > 0
+                    ? (double) metrics.priceChange1h / hourAgoHigh * 100 : 0;
+        }
+
+        if (size >= 72) // 6 hours
+        {
+            int sixHoursAgoHigh = series.high(size - 72);
+            metrics.priceChange6h = latestHigh - sixHoursAgoHigh;
+            metrics.priceChangePercent6h = sixHoursAgoHigh > 0
+                    ? (double) metrics.priceChange6h / sixHoursAgoHigh * 100 : 0;
+        }
+
+        metrics.volatility = volatility();
+        metrics.trendStrength = trendStrength();
+        metrics.volumeTrend = volumeTrend(series);
+        metrics.marginStability = marginStability();
+        metrics.rsi = rsi();
+        metrics.sma12 = size >= SMA_SHORT_PERIODS ? (int) ((double) smaShortSum / SMA_SHORT_PERIODS) : 0;
+        metrics.sma24 = size >= SMA_LONG_PERIODS ? (int) ((double) smaLongSum / SMA_LONG_PERIODS) : 0;
+        metrics.ema12 = size >= EMA_PERIODS ? (int) ema : 0;
+
+        if (size >= BOLLINGER_PERIODS)
+        {
+            double width = BOLLINGER_WIDTH * Math.sqrt(bands.variance());
+            metrics.bollingerMiddle = (int) bands.mean();
+            metrics.bollingerUpper = (int) (bands.mean() + width);
+            metrics.bollingerLower = (int) Math.max(0, bands.mean() - width);
+        }
+        if (size >= MACD_SLOW_PERIODS)
+        {
+            metrics.macd = ema - emaSlow;
+            metrics.macdSignal = macdSignal;
+            metrics.macdHistogram = metrics.macd - macdSignal;
+        }
+        metrics.vwap = vwapVolume > 0 ? (int) Math.round(vwapValue / vwapVolume) : 0;
+        metrics.maxDrawdown = maxDrawdown(series) * 100;
+        // peak is the window's highest high once maxDrawdown has caught up
+        metrics.currentDrawdown = peak > 0 && latestHigh > 0 && latestHigh < peak
+                ? (double) (peak - latestHigh) / peak * 100 : 0;
+    }
+
+    /**
+     * Deepest fall of the high price from an earlier peak in the window, as a fraction of that peak
+     */
+    private double maxDrawdown(PriceSeries series)
+    {
+        if (drawdownStale)
+        {
+            peak = 0;
+            maxDrawdown = 0;
+            for (int i = 0; i < count; i++)
+            {
+                trackDrawdown(series.high(i));
+            }
+            drawdownStale = false;
+        }
+        return maxDrawdown;
+    }
+
+    // Points with no high price (nothing sold) are skipped rather than counted as a fall to 0
+    private void trackDrawdown(int high)
+    {
+        if (high > peak)
+        {
+            peak = high;
+        }
+        else if (high > 0)
+        {
+            maxDrawdown = Math.max(maxDrawdown, (double) (peak - high) / peak);
+        }
+    }
+
+    /**
+     * Standard deviation of returns, as a percentage
+     */
+    private double volatility()
+    {
+        return returns.size() == 0 ? 0 : Math.sqrt(returns.variance()) * 100;
+    }
+
+    /**
+     * Regression slope of the high price as a percentage of the average price per period.
+     * Positive = uptrend, Negative = downtrend, Near 0 = sideways
+     */
+    private double trendStrength()
+    {
+        if (count < 5) return 0;
+
+        double n = count;
+        double sumX = n * (n - 1) / 2;
+        double sumX2 = (n - 1) * n * (2 * n - 1) / 6;
+        double slope = (n * sumIndexHigh - sumX * sumHigh) / (n * sumX2 - sumX * sumX);
+        double avgPrice = sumHigh / n;
+        return avgPrice > 0 ? (slope / avgPrice) * 100 : 0;
+    }
+
+    /**
+     * Volume of the last 5 points against the 5 before that, as a percentage change
+     */
+    private double volumeTrend(PriceSeries series)
+    {
+        if (count < 10) return 0;
+
+        long recentVolume = 0;
+        long earlierVolume = 0;
+        for (int i = count - 5; i < count; i++)
+        {
+            recentVolume += series.totalVolume(i);
+        }
+        for (int i = count - 10; i < count - 5; i++)
+        {
+            earlierVolume += series.totalVolume(i);
+        }
+
+        if (earlierVolume == 0) return 0;
+        return ((double) (recentVolume - earlierVolume) / earlierVolume) * 100;
+    }
+
+    /**
+     * Coefficient of variation of the margin (lower = more stable)
+     */
+    private double marginStability()
+    {
+        if (count < 5) return 100; // Unknown = unstable
+        if (marginSum == 0) return 100;
+
+        double mean = (double) marginSum / count;
+        return Math.sqrt(margins.variance()) / mean * 100;
+    }
+
+    /**
+     * RSI over the last RSI_PERIODS changes, using their simple average gain and loss
+     */
+    private double rsi()
+    {
+        if (count < RSI_PERIODS + 1) return 50; // Neutral
+        if (lossSum == 0) return 100;
+
+        double rs = (double) gainSum / lossSum;
+        return 100 - (100 / (1 + rs));
+    }
+
+    /**
+     * Mean and variance over a sliding window (Welford's method, with removal)
+     */
+    private static final class RollingStats
+    {
+        private int n;
+        private double mean;
+        private double m2;
+
+        void add(double x)
+        {
+            n++;
+            double delta = x - mean;
+            mean += delta / n;
+            m2 += delta * (x - mean);
+        }
+
+        void remove(double x)
+        {
+            if (n <= 1)
+            {
+                clear();
+                return;
+            }
+            double delta = x - mean;
+            mean -= delta / (n - 1);
+            m2 -= delta * (x - mean);
+            n--;
+            if (m2 < 0) m2 = 0;
+        }
+
+        void clear()
+        {
+            n = 0;
+            mean = 0;
+            m2 = 0;
+        }
+
+        int size()
+        {
+            return n;
+        }
+
+        double mean()
+        {
+            return mean;
+        }
+
+        // Population variance, as the full recompute used to calculate it
+        double variance()
+        {
+            return n == 0 ? 0 : m2 / n;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.margeon.shoparbitrage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded map that evicts the least recently used entry, with hit, miss and eviction counters.
+ *
+ * Backed by an access-ordered {@link LinkedHashMap}; every method locks the
+ * cache, which is fine for the handful of lookups per user action it sees.
+ */
+final class LruCache<K, V>
+{
+    private final int maxEntries;
+    private final Map<K, V> map;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    LruCache(int maxEntries)
+    {
+        if (maxEntries <= 0)
+        {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+
+        this.maxEntries = maxEntries;
+        this.map = new LinkedHashMap<K, V>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+            {
+                if (size() > LruCache.this.maxEntries)
+                {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * The cached value, or null. Counts as a hit or a miss, and a hit makes the entry most recently used.
+     */
+    synchronized V get(K key)
+    {
+        V value = map.get(key);
+        if (value != null)
+        {
+            hits++;
+        }
+        else
+        {
+            misses++;
+        }
+        return value;
+    }
+
+    synchronized void put(K key, V value)
+    {
+        map.put(key, value);
+    }
+
+    synchronized int size()
+    {
+        return map.size();
+    }
+
+    synchronized void clear()
+    {
+        map.clear();
+    }
+
+    synchronized long getHits()
+    {
+        return hits;
+    }
+
+    synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    synchronized long getEvictions()
+    {
+        return evictions;
+    }
+
+    /**
+     * "12/128 entries, 40 hits, 12 misses, 3 evicted"
+     */
+    synchronized String stats()
+    {
+        return String.format("%d/%d entries, %d hits, %d misses, %d evicted",
+                map.size(), maxEntries, hits, misses, evictions);
+    }
+}
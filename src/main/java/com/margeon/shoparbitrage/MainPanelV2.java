@@ -16,12 +16,14 @@ public class MainPanelV2 extends PluginPanel
     private final ShopArbitragePanel shopPanel;
     private final FlippingPanelV2 flippingPanel;  // V2
     private final SlayerPanel slayerPanel;
+    private final ApiMetricsPanel apiMetricsPanel;
 
     public MainPanelV2(ItemManager itemManager, ClientThread clientThread,
                        WikiPriceService wikiPriceService,
                        PriceHistoryService priceHistoryService,
                        FlipScorer flipScorer,
                        FlippingSessionManager sessionManager,
+                       WikiApiMetrics apiMetrics,
                        ShopArbitrageConfigV2 config)
     {
         super(false);
@@ -69,6 +71,17 @@ public class MainPanelV2 extends PluginPanel
         tabContainer.add(tabGroup, BorderLayout.CENTER);
         add(tabContainer, BorderLayout.NORTH);
         add(display, BorderLayout.CENTER);
+
+        // Debug stats, hidden unless enabled in the config
+        apiMetricsPanel = new ApiMetricsPanel(apiMetrics, priceHistoryService);
+        apiMetricsPanel.setVisible(config.showApiMetrics());
+        add(apiMetricsPanel, BorderLayout.SOUTH);
+    }
+
+    public void setApiMetricsVisible(boolean visible)
+    {
+        apiMetricsPanel.setVisible(visible);
+        revalidate();
     }
 
     public void init()
@@ -77,4 +90,13 @@ public class MainPanelV2 extends PluginPanel
         try { flippingPanel.init(); } catch (Exception ignored) {}
         try { slayerPanel.init(); } catch (Exception ignored) {}
     }
-}
\ No newline at end of file
+
+    /**
+     * Detach sub-panels from the price services
+     */
+    public void shutDown()
+    {
+        shopPanel.shutDown();
+        slayerPanel.shutDown();
+    }
+}
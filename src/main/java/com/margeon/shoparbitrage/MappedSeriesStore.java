@@ -0,0 +1,428 @@
+package com.margeon.shoparbitrage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps one resolution of price history in a memory-mapped file instead of on the heap.
+ *
+ * Layout (all big-endian):
+ * <pre>
+ *   header     32 bytes   magic, format, points per series, directory length, used slots, pad, updated-at millis
+ *   directory  4 bytes x DIRECTORY_LENGTH, indexed by item ID: slot number + 1 (0 = no series)
+ *   slots      fixed size, each: start, size, item ID, pad, then capacity x 32-byte points
+ *              (timestamp long, high int, low int, high volume long, low volume long)
+ * </pre>
+ * Slots are handed out in order as new items appear and are mapped in chunks
+ * of {@link #SLOTS_PER_CHUNK}, so the mapping grows with the item count
+ * without ever remapping what is already there. The series live in the file,
+ * so reopening it restores the history without deserializing anything.
+ *
+ * A file whose layout doesn't match, or that hasn't been written for a day, is cleared on open.
+ *
+ * After {@link #close} the store drops its buffers and any series it handed out
+ * throws on use. Java can't unmap a buffer explicitly, so the pages themselves
+ * are released once the buffers are garbage collected.
+ */
+@Slf4j
+final class MappedSeriesStore implements Closeable
+{
+    private static final int MAGIC = 0x50485354; // "PHST"
+    private static final int FORMAT = 1;
+
+    private static final int HEADER_BYTES = 32;
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_FORMAT = 4;
+    private static final int OFF_CAPACITY = 8;
+    private static final int OFF_DIRECTORY_LENGTH = 12;
+    private static final int OFF_USED_SLOTS = 16;
+    private static final int OFF_UPDATED_AT = 24;
+
+    // Item IDs at or above this have no directory entry; callers keep those on the heap
+    private static final int DIRECTORY_LENGTH = 1 << 16;
+
+    private static final int SLOT_HEADER_BYTES = 16;
+    private static final int OFF_SLOT_START = 0;
+    private static final int OFF_SLOT_SIZE = 4;
+    private static final int OFF_SLOT_ITEM = 8;
+
+    private static final int POINT_BYTES = 32;
+    private static final int OFF_TIMESTAMP = 0;
+    private static final int OFF_HIGH = 8;
+    private static final int OFF_LOW = 12;
+    private static final int OFF_HIGH_VOLUME = 16;
+    private static final int OFF_LOW_VOLUME = 24;
+
+    private static final int SLOTS_PER_CHUNK = 256;
+    private static final long MAX_AGE_MS = TimeUnit.HOURS.toMillis(24);
+
+    private final File file;
+    private final FileChannel channel;
+    private MappedByteBuffer index; // header + directory, null once closed
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private final int capacity;
+    private final int slotBytes;
+    private final long dataStart;
+    private int usedSlots;
+    private volatile boolean closed;
+
+    private MappedSeriesStore(File file, int capacity) throws IOException
+    {
+        this.file = file;
+        this.capacity = capacity;
+        this.slotBytes = SLOT_HEADER_BYTES + capacity * POINT_BYTES;
+        this.dataStart = HEADER_BYTES + (long) DIRECTORY_LENGTH * Integer.BYTES;
+
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long existingSize = channel.size();
+        index = channel.map(FileChannel.MapMode.READ_WRITE, 0, dataStart);
+
+        if (isUsable(existingSize))
+        {
+            usedSlots = index.getInt(OFF_USED_SLOTS);
+        }
+        else
+        {
+            reset();
+        }
+
+        for (int chunk = 0; (long) chunk * SLOTS_PER_CHUNK < usedSlots; chunk++)
+        {
+            mapChunk(chunk);
+        }
+    }
+
+    /**
+     * Open (or create) a store for series of the given capacity
+     */
+    static MappedSeriesStore open(File file, int capacity) throws IOException
+    {
+        return new MappedSeriesStore(file, capacity);
+    }
+
+    private boolean isUsable(long existingSize)
+    {
+        if (existingSize < dataStart
+                || index.getInt(OFF_MAGIC) != MAGIC
+                || index.getInt(OFF_FORMAT) != FORMAT
+                || index.getInt(OFF_CAPACITY) != capacity
+                || index.getInt(OFF_DIRECTORY_LENGTH) != DIRECTORY_LENGTH)
+        {
+            return false;
+        }
+
+        int slots = index.getInt(OFF_USED_SLOTS);
+        if (slots < 0 || slots > DIRECTORY_LENGTH || existingSize < dataStart + (long) slots * slotBytes)
+        {
+            log.warn("Price history store {} is corrupt, starting fresh", file.getName());
+            return false;
+        }
+
+        long age = System.currentTimeMillis() - index.getLong(OFF_UPDATED_AT);
+        if (age > MAX_AGE_MS)
+        {
+            log.debug("Price history store {} is {}h old, starting fresh", file.getName(), TimeUnit.MILLISECONDS.toHours(age));
+            return false;
+        }
+        return true;
+    }
+
+    private void reset() throws IOException
+    {
+        channel.truncate(dataStart);
+        for (int i = 0; i < DIRECTORY_LENGTH; i++)
+        {
+            index.putInt(HEADER_BYTES + i * Integer.BYTES, 0);
+        }
+        index.putInt(OFF_MAGIC, MAGIC);
+        index.putInt(OFF_FORMAT, FORMAT);
+        index.putInt(OFF_CAPACITY, capacity);
+        index.putInt(OFF_DIRECTORY_LENGTH, DIRECTORY_LENGTH);
+        index.putInt(OFF_USED_SLOTS, 0);
+        index.putLong(OFF_UPDATED_AT, System.currentTimeMillis());
+        usedSlots = 0;
+    }
+
+    private void mapChunk(int chunk) throws IOException
+    {
+        long chunkBytes = (long) SLOTS_PER_CHUNK * slotBytes;
+        chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, dataStart + chunk * chunkBytes, chunkBytes));
+    }
+
+    /**
+     * Every series already in the file, keyed by item ID
+     */
+    synchronized Map<Integer, PriceSeries> loadAll()
+    {
+        Map<Integer, PriceSeries> series = new HashMap<>();
+        if (closed)
+        {
+            return series;
+        }
+        for (int itemId = 0; itemId < DIRECTORY_LENGTH; itemId++)
+        {
+            int slot = index.getInt(HEADER_BYTES + itemId * Integer.BYTES) - 1;
+            if (slot < 0 || slot >= usedSlots)
+            {
+                continue;
+            }
+
+            Series s = new Series(slot);
+            if (s.isValid(itemId))
+            {
+                series.put(itemId, s);
+            }
+        }
+        return series;
+    }
+
+    /**
+     * The series for an item, allocating a slot for it if needed.
+     * Returns null if the item ID is out of range or the store is closed, so the caller can fall back to the heap.
+     */
+    synchronized PriceSeries create(int itemId)
+    {
+        if (closed || itemId < 0 || itemId >= DIRECTORY_LENGTH)
+        {
+            return null;
+        }
+
+        int entry = HEADER_BYTES + itemId * Integer.BYTES;
+        int slot = index.getInt(entry) - 1;
+        if (slot >= 0 && slot < usedSlots)
+        {
+            // loadAll skipped this slot if it was torn or belongs to another item; start it over
+            Series existing = new Series(slot);
+            if (!existing.isValid(itemId))
+            {
+                existing.init(itemId);
+            }
+            return existing;
+        }
+
+        slot = usedSlots;
+        try
+        {
+            if (slot / SLOTS_PER_CHUNK >= chunks.size())
+            {
+                mapChunk(slot / SLOTS_PER_CHUNK);
+            }
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to grow price history store {}: {}", file.getName(), e.getMessage());
+            return null;
+        }
+
+        Series series = new Series(slot);
+        series.init(itemId);
+        index.putInt(entry, slot + 1);
+        usedSlots++;
+        index.putInt(OFF_USED_SLOTS, usedSlots);
+        return series;
+    }
+
+    /**
+     * Flush dirty pages to disk
+     */
+    synchronized void force()
+    {
+        if (closed)
+        {
+            return;
+        }
+        index.force();
+        for (MappedByteBuffer chunk : chunks)
+        {
+            chunk.force();
+        }
+    }
+
+    /**
+     * Flush and close the file, and stop every series from this store reading or writing it
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (closed)
+        {
+            return;
+        }
+        force();
+        closed = true;
+        index = null;
+        chunks.clear();
+        channel.close();
+    }
+
+    private void touch()
+    {
+        MappedByteBuffer index = this.index;
+        if (index != null)
+        {
+            index.putLong(OFF_UPDATED_AT, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * A ring buffer living in one slot of the mapped file
+     */
+    private final class Series implements PriceSeries
+    {
+        private final MappedByteBuffer mapped;
+        private final int base;
+
+        Series(int slot)
+        {
+            mapped = chunks.get(slot / SLOTS_PER_CHUNK);
+            base = (slot % SLOTS_PER_CHUNK) * slotBytes;
+        }
+
+        void init(int itemId)
+        {
+            MappedByteBuffer buffer = buffer();
+            buffer.putInt(base + OFF_SLOT_START, 0);
+            buffer.putInt(base + OFF_SLOT_SIZE, 0);
+            buffer.putInt(base + OFF_SLOT_ITEM, itemId);
+        }
+
+        boolean isValid(int itemId)
+        {
+            MappedByteBuffer buffer = buffer();
+            int start = buffer.getInt(base + OFF_SLOT_START);
+            int size = buffer.getInt(base + OFF_SLOT_SIZE);
+            return buffer.getInt(base + OFF_SLOT_ITEM) == itemId
+                    && start >= 0 && start < capacity
+                    && size >= 0 && size <= capacity;
+        }
+
+        @Override
+        public synchronized void add(long timestamp, int avgHigh, int avgLow, long highVol, long lowVol)
+        {
+            MappedByteBuffer buffer = buffer();
+            int start = buffer.getInt(base + OFF_SLOT_START);
+            int size = buffer.getInt(base + OFF_SLOT_SIZE);
+            int physical;
+            if (size < capacity)
+            {
+                physical = (start + size) % capacity;
+                size++;
+            }
+            else
+            {
+                physical = start;
+                start = (start + 1) % capacity;
+            }
+
+            int point = base + SLOT_HEADER_BYTES + physical * POINT_BYTES;
+            buffer.putLong(point + OFF_TIMESTAMP, timestamp);
+            buffer.putInt(point + OFF_HIGH, avgHigh);
+            buffer.putInt(point + OFF_LOW, avgLow);
+            buffer.putLong(point + OFF_HIGH_VOLUME, highVol);
+            buffer.putLong(point + OFF_LOW_VOLUME, lowVol);
+
+            // Write the point before publishing the new bounds
+            buffer.putInt(base + OFF_SLOT_START, start);
+            buffer.putInt(base + OFF_SLOT_SIZE, size);
+            touch();
+        }
+
+        @Override
+        public synchronized void clear()
+        {
+            MappedByteBuffer buffer = buffer();
+            buffer.putInt(base + OFF_SLOT_SIZE, 0);
+            buffer.putInt(base + OFF_SLOT_START, 0);
+            touch();
+        }
+
+        @Override
+        public int capacity()
+        {
+            return capacity;
+        }
+
+        @Override
+        public synchronized int size()
+        {
+            return buffer().getInt(base + OFF_SLOT_SIZE);
+        }
+
+        @Override
+        public synchronized boolean isEmpty()
+        {
+            return size() == 0;
+        }
+
+        @Override
+        public long timestamp(int index)
+        {
+            return buffer().getLong(point(index) + OFF_TIMESTAMP);
+        }
+
+        @Override
+        public int high(int index)
+        {
+            return buffer().getInt(point(index) + OFF_HIGH);
+        }
+
+        @Override
+        public int low(int index)
+        {
+            return buffer().getInt(point(index) + OFF_LOW);
+        }
+
+        @Override
+        public long highVolume(int index)
+        {
+            return buffer().getLong(point(index) + OFF_HIGH_VOLUME);
+        }
+
+        @Override
+        public long lowVolume(int index)
+        {
+            return buffer().getLong(point(index) + OFF_LOW_VOLUME);
+        }
+
+        @Override
+        public long totalVolume(int index)
+        {
+            MappedByteBuffer buffer = buffer();
+            int point = point(index);
+            return buffer.getLong(point + OFF_HIGH_VOLUME) + buffer.getLong(point + OFF_LOW_VOLUME);
+        }
+
+        private MappedByteBuffer buffer()
+        {
+            if (closed)
+            {
+                throw new IllegalStateException("Price history store " + file.getName() + " is closed");
+            }
+            return mapped;
+        }
+
+        private int point(int index)
+        {
+            MappedByteBuffer buffer = buffer();
+            int size = buffer.getInt(base + OFF_SLOT_SIZE);
+            if (index < 0 || index >= size)
+            {
+                throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+            }
+            int start = buffer.getInt(base + OFF_SLOT_START);
+            return base + SLOT_HEADER_BYTES + ((start + index) % capacity) * POINT_BYTES;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.margeon.shoparbitrage;
+
+import java.util.Arrays;
+
+/**
+ * Describes which items changed in a price refresh, and which fields moved for each one.
+ *
+ * Consumers can use this to recompute only the affected items instead of
+ * rebuilding everything. On a typical /24h refresh only a few hundred of
+ * the roughly 4,000 items move.
+ *
+ * Item IDs are kept sorted so {@link #contains} is a binary search.
+ */
+public final class PriceChangeEvent
+{
+    // Field bits
+    public static final int HIGH = 1;
+    public static final int LOW = 1 << 1;
+    public static final int HIGH_VOLUME = 1 << 2;
+    public static final int LOW_VOLUME = 1 << 3;
+    public static final int HIGH_TIME = 1 << 4;
+    public static final int LOW_TIME = 1 << 5;
+    public static final int HISTORY = 1 << 6; // New points were added to the item's price history
+
+    public static final int PRICES = HIGH | LOW;
+    public static final int VOLUMES = HIGH_VOLUME | LOW_VOLUME;
+    public static final int ALL_FIELDS = PRICES | VOLUMES | HIGH_TIME | LOW_TIME;
+
+    /**
+     * Where the change came from
+     */
+    public enum Source
+    {
+        DAILY,          // /24h snapshot swapped in
+        LATEST,         // /latest poll merged into the snapshot
+        FIVE_MINUTE,    // /5m history ingested
+        ONE_HOUR,       // /1h history ingested
+        TIMESERIES      // /timeseries history ingested for specific items
+    }
+
+    private final Source source;
+    private final long version;
+    private final int[] itemIds;
+    private final int[] fields;
+
+    private PriceChangeEvent(Source source, long version, int[] itemIds, int[] fields)
+    {
+        this.source = source;
+        this.version = version;
+        this.itemIds = itemIds;
+        this.fields = fields;
+    }
+
+    public Source getSource()
+    {
+        return source;
+    }
+
+    /**
+     * Version of the snapshot (or history) that this event produced
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Number of changed items
+     */
+    public int size()
+    {
+        return itemIds.length;
+    }
+
+    public boolean isEmpty()
+    {
+        return itemIds.length == 0;
+    }
+
+    public int itemId(int index)
+    {
+        return itemIds[index];
+    }
+
+    /**
+     * Field bits that moved for the item at this index
+     */
+    public int fields(int index)
+    {
+        return fields[index];
+    }
+
+    public boolean contains(int itemId)
+    {
+        return Arrays.binarySearch(itemIds, itemId) >= 0;
+    }
+
+    /**
+     * Field bits that moved for an item, or 0 if it did not change
+     */
+    public int fieldsFor(int itemId)
+    {
+        int index = Arrays.binarySearch(itemIds, itemId);
+        return index >= 0 ? fields[index] : 0;
+    }
+
+    /**
+     * Copy of the changed item IDs, in ascending order
+     */
+    public int[] getItemIds()
+    {
+        return itemIds.clone();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("PriceChangeEvent[%s v%d, %d items]", source, version, itemIds.length);
+    }
+
+    /**
+     * Collects changed items. An item added more than once has its field bits merged.
+     */
+    public static final class Builder
+    {
+        private final Source source;
+        private long[] entries = new long[64]; // item ID in the high 32 bits, field bits in the low 32 bits
+        private int size;
+
+        public Builder(Source source)
+        {
+            this.source = source;
+        }
+
+        public Builder add(int itemId, int changedFields)
+        {
+            if (changedFields == 0)
+            {
+                return this;
+            }
+            if (size == entries.length)
+            {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            entries[size++] = ((long) itemId << 32) | (changedFields & 0xFFFFFFFFL);
+            return this;
+        }
+
+        public boolean isEmpty()
+        {
+            return size == 0;
+        }
+
+        public PriceChangeEvent build(long version)
+        {
+            // Sorting the packed longs orders by item ID, keeping each ID next to its field bits
+            long[] sorted = Arrays.copyOf(entries, size);
+            Arrays.sort(sorted);
+
+            int[] ids = new int[size];
+            int[] bits = new int[size];
+            int count = 0;
+            for (long entry : sorted)
+            {
+                int itemId = (int) (entry >>> 32);
+                int entryFields = (int) entry;
+                if (count > 0 && ids[count - 1] == itemId)
+                {
+                    bits[count - 1] |= entryFields;
+                }
+                else
+                {
+                    ids[count] = itemId;
+                    bits[count] = entryFields;
+                    count++;
+                }
+            }
+
+            return new PriceChangeEvent(source, version, Arrays.copyOf(ids, count), Arrays.copyOf(bits, count));
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.margeon.shoparbitrage;
+
+/**
+ * Receives {@link PriceChangeEvent}s from {@link WikiPriceService} and
+ * {@link PriceHistoryService}.
+ *
+ * Events are delivered on the HTTP callback thread that ingested the data, so
+ * listeners must hop to the client thread or EDT themselves before touching
+ * game state or Swing.
+ */
+@FunctionalInterface
+public interface PriceChangeListener
+{
+    void onPriceChange(PriceChangeEvent event);
+}
@@ -1,9 +1,7 @@
 package com.margeon.shoparbitrage;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.client.RuneLite;
 import okhttp3.*;
@@ -11,9 +9,15 @@ import okhttp3.*;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Advanced price history service that tracks item prices over time
@@ -30,35 +34,210 @@ public class PriceHistoryService
 {
     private static final String WIKI_API_BASE = "https://prices.runescape.wiki/api/v1/osrs/";
     private static final String USER_AGENT = "ShopArbitragePlugin - Discord: philly_9859";
-    private static final File HISTORY_FILE = new File(RuneLite.RUNELITE_DIR, "price-history-cache.json");
+    private static final File LEGACY_HISTORY_FILE = new File(RuneLite.RUNELITE_DIR, "price-history-cache.json");
+    private static final File HISTORY_SNAPSHOT_FILE = new File(RuneLite.RUNELITE_DIR, "price-history.snapshot");
+    private static final File HISTORY_LOG_FILE = new File(RuneLite.RUNELITE_DIR, "price-history.log");
+    private static final File FIVE_MIN_STORE_FILE = new File(RuneLite.RUNELITE_DIR, "price-history-5m.dat");
+    private static final File ONE_HOUR_STORE_FILE = new File(RuneLite.RUNELITE_DIR, "price-history-1h.dat");
 
     // Cache durations
     private static final long FIVE_MIN_CACHE_MS = 5 * 60 * 1000;      // 5 minutes
     private static final long ONE_HOUR_CACHE_MS = 60 * 60 * 1000;     // 1 hour
     private static final long TIMESERIES_CACHE_MS = 6 * 60 * 60 * 1000; // 6 hours
 
+    // How long after a timeseries merge the heap history is snapshotted, so a burst of merges is written once
+    private static final long COMPACT_DELAY_SECONDS = 60;
+    private static final int TIMESERIES_CACHE_ENTRIES = 128;
+
+    // Ring buffer sizes per item
+    private static final int FIVE_MIN_POINTS = 288; // 24 hours of 5-min data
+    private static final int ONE_HOUR_POINTS = 168; // 7 days of hourly data
+    private static final int SIX_HOUR_POINTS = 120; // 30 days of 6-hour bars
+    private static final int ONE_DAY_POINTS = 365;  // 1 year of daily bars
+
+    private static final long FIVE_MIN_SECONDS = TimeUnit.MINUTES.toSeconds(5);
+    private static final long ONE_HOUR_SECONDS = TimeUnit.HOURS.toSeconds(1);
+    private static final long SIX_HOUR_SECONDS = TimeUnit.HOURS.toSeconds(6);
+    private static final long ONE_DAY_SECONDS = TimeUnit.DAYS.toSeconds(1);
+
+    public static final long WEEK_SECONDS = TimeUnit.DAYS.toSeconds(7);
+    public static final long MONTH_SECONDS = TimeUnit.DAYS.toSeconds(30);
+
+    // Spread points needed before the sketch percentiles are trusted over the mean-based stats
+    private static final int MIN_SKETCH_POINTS = 12;
+
+    // Width of the 10th-90th percentile range of a normal distribution, in standard deviations
+    private static final double P10_P90_SIGMAS = 2.563;
+
     private final OkHttpClient okHttpClient;
     private final Gson gson;
+    private final WikiApiMetrics apiMetrics;
+    private final ShopArbitrageConfigV2 config;
+    private final ScheduledExecutorService executor;
 
     // Price data caches
-    private final Map<Integer, List<PricePoint>> fiveMinHistory = new ConcurrentHashMap<>();
-    private final Map<Integer, List<PricePoint>> oneHourHistory = new ConcurrentHashMap<>();
-    private final Map<Integer, List<PricePoint>> timeSeriesHistory = new ConcurrentHashMap<>();
+    private final Map<Integer, PriceSeries> fiveMinHistory = new ConcurrentHashMap<>();
+    private final Map<Integer, PriceSeries> oneHourHistory = new ConcurrentHashMap<>();
+
+    // When each /timeseries was last fetched, keyed like the in-flight fetch; least recently used are evicted
+    private final LruCache<String, Long> timeSeriesCache = new LruCache<>(TIMESERIES_CACHE_ENTRIES);
+
+    // Coarser tiers, built by rolling up the finer ones (always on the heap)
+    private final Map<Integer, PriceSeries> sixHourHistory = new ConcurrentHashMap<>();
+    private final Map<Integer, PriceSeries> oneDayHistory = new ConcurrentHashMap<>();
+
+    // Downsampling 5m -> 1h -> 6h -> 24h. Only complete hours of 5m data become 1h bars;
+    // the /1h feed produces the same bars, and whichever arrives first is kept.
+    private final PriceRollup hourRollup = new PriceRollup(ONE_HOUR_SECONDS, (int) (ONE_HOUR_SECONDS / FIVE_MIN_SECONDS));
+    private final PriceRollup sixHourRollup = new PriceRollup(SIX_HOUR_SECONDS, 1);
+    private final PriceRollup dayRollup = new PriceRollup(ONE_DAY_SECONDS, 1);
+
+    // Running indicators for the 5m and 1h series, updated as points are appended
+    private final Map<Integer, IndicatorState> fiveMinIndicators = new ConcurrentHashMap<>();
+    private final Map<Integer, IndicatorState> oneHourIndicators = new ConcurrentHashMap<>();
+
+    // Spread distributions fed by the 5m points, built from the 5m series on first use
+    private final Map<Integer, PriceSketch> priceSketches = new ConcurrentHashMap<>();
+
+    // Memory-mapped backing for the 5m and 1h buffers when off-heap history is enabled, otherwise null
+    private volatile MappedSeriesStore fiveMinStore;
+    private volatile MappedSeriesStore oneHourStore;
+
+    // Whether history is loaded; cleared by close() so the next startup reloads it
+    private boolean opened;
+
+    // Snapshot + append log for whichever resolutions are kept on the heap
+    private final HistorySegmentStore segmentStore = new HistorySegmentStore(HISTORY_SNAPSHOT_FILE, HISTORY_LOG_FILE);
+
+    // Set when timeseries points were merged into heap history and a snapshot is scheduled to save them
+    private final AtomicBoolean compactPending = new AtomicBoolean();
 
     // Last fetch timestamps
-    private long lastFiveMinFetch = 0;
-    private long lastOneHourFetch = 0;
-    private final Map<Integer, Long> lastTimeSeriesFetch = new ConcurrentHashMap<>();
+    private volatile long lastFiveMinFetch = 0;
+    private volatile long lastOneHourFetch = 0;
 
-    // Calculated metrics cache
+    // Calculated metrics cache, filled on demand by getMetrics
     private final Map<Integer, ItemMetrics> metricsCache = new ConcurrentHashMap<>();
 
+    // History version at which each item's 5m/1h series last got new points
+    private final Map<Integer, Long> seriesVersions = new ConcurrentHashMap<>();
+
+    // Callers that ask for a feed while it is already being downloaded wait on that download
+    private final SingleFlight<String> inFlight = new SingleFlight<>();
+
+    // Bumped every time new points are ingested; carried on the change events
+    private final AtomicLong historyVersion = new AtomicLong();
+    private final List<PriceChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
     @Inject
-    public PriceHistoryService(OkHttpClient okHttpClient, Gson gson)
+    public PriceHistoryService(OkHttpClient okHttpClient, Gson gson, WikiApiMetrics apiMetrics,
+                               ShopArbitrageConfigV2 config, ScheduledExecutorService executor)
     {
         this.okHttpClient = okHttpClient;
         this.gson = gson;
-        loadCachedHistory();
+        this.apiMetrics = apiMetrics;
+        this.config = config;
+        this.executor = executor;
+
+        open();
+    }
+
+    /**
+     * Map the history stores and load the saved history. Does nothing if it is already open.
+     */
+    public synchronized void open()
+    {
+        if (opened)
+        {
+            return;
+        }
+        opened = true;
+
+        boolean offHeap = config.offHeapHistory();
+        fiveMinStore = offHeap ? openStore(FIVE_MIN_STORE_FILE, FIVE_MIN_POINTS, fiveMinHistory) : null;
+        oneHourStore = offHeap ? openStore(ONE_HOUR_STORE_FILE, ONE_HOUR_POINTS, oneHourHistory) : null;
+        loadHistory();
+        seedRollups();
+    }
+
+    /**
+     * Close the mapped stores and drop the in-memory history, which points into their
+     * mappings. Everything is already on disk, so {@link #open} picks it back up.
+     */
+    public synchronized void close()
+    {
+        if (!opened)
+        {
+            return;
+        }
+        compactIfPending();
+        opened = false;
+
+        closeStore(fiveMinStore);
+        closeStore(oneHourStore);
+        fiveMinStore = null;
+        oneHourStore = null;
+
+        fiveMinHistory.clear();
+        oneHourHistory.clear();
+        sixHourHistory.clear();
+        oneDayHistory.clear();
+        hourRollup.clear();
+        sixHourRollup.clear();
+        dayRollup.clear();
+        fiveMinIndicators.clear();
+        oneHourIndicators.clear();
+        priceSketches.clear();
+        metricsCache.clear();
+        seriesVersions.clear();
+        timeSeriesCache.clear();
+        lastFiveMinFetch = 0;
+        lastOneHourFetch = 0;
+    }
+
+    private static void closeStore(MappedSeriesStore store)
+    {
+        if (store == null)
+        {
+            return;
+        }
+        try
+        {
+            store.close();
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to close mapped price history: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Open a mapped store and pick up the series already in it. Returns null (keeping that
+     * resolution on the heap) if the file can't be opened.
+     */
+    private static MappedSeriesStore openStore(File file, int capacity, Map<Integer, PriceSeries> history)
+    {
+        try
+        {
+            MappedSeriesStore store = MappedSeriesStore.open(file, capacity);
+            history.putAll(store.loadAll());
+            log.info("Mapped {} price series from {}", history.size(), file.getName());
+            return store;
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to open {}, keeping price history on the heap: {}", file.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * New series for an item: a slot in the mapped store if there is one, otherwise a heap buffer
+     */
+    private static PriceSeries newSeries(MappedSeriesStore store, int itemId, int capacity)
+    {
+        PriceSeries series = store != null ? store.create(itemId) : null;
+        return series != null ? series : new HeapPriceSeries(capacity);
     }
 
     /**
@@ -66,12 +245,27 @@ public class PriceHistoryService
      * Best for: Short-term trend detection, recent price movements
      */
     public void fetchFiveMinuteData(Runnable onComplete)
+    {
+        fetchFiveMinuteData(onComplete, onComplete);
+    }
+
+    /**
+     * Same as {@link #fetchFiveMinuteData(Runnable)}, but with separate callbacks for success and failure
+     */
+    public void fetchFiveMinuteData(Runnable onSuccess, Runnable onFailure)
     {
         long now = System.currentTimeMillis();
         if (now - lastFiveMinFetch < FIVE_MIN_CACHE_MS && !fiveMinHistory.isEmpty())
         {
             log.debug("Using cached 5-minute data");
-            if (onComplete != null) onComplete.run();
+            if (onSuccess != null) onSuccess.run();
+            return;
+        }
+
+        final String key = "5m";
+        if (!inFlight.join(key, onSuccess, onFailure))
+        {
+            log.debug("Joining in-flight 5-minute fetch");
             return;
         }
 
@@ -82,72 +276,92 @@ public class PriceHistoryService
 
         log.info("Fetching 5-minute price data from Wiki API...");
 
+        final WikiApiMetrics.Endpoint metrics = apiMetrics.endpoint(WikiApiMetrics.FIVE_MINUTE);
+        final long started = metrics.start();
         okHttpClient.newCall(request).enqueue(new Callback()
         {
             @Override
             public void onFailure(Call call, IOException e)
             {
                 log.warn("Failed to fetch 5-minute data: {}", e.getMessage());
-                if (onComplete != null) onComplete.run();
+                metrics.failed();
+                inFlight.fail(key);
             }
 
             @Override
             public void onResponse(Call call, Response response) throws IOException
             {
+                metrics.responded(started);
+                boolean ingested = false;
+
                 try
                 {
                     if (!response.isSuccessful())
                     {
                         log.warn("5-minute API returned error: {}", response.code());
+                        metrics.failed();
                         return;
                     }
 
-                    String body = response.body().string();
-                    JsonObject json = gson.fromJson(body, JsonObject.class);
+                    long parseStart = System.nanoTime();
+                    WikiFeedDecoder.Points points;
+                    try (JsonReader reader = openCounted(response, metrics))
+                    {
+                        points = WikiFeedDecoder.read(reader, System.currentTimeMillis() / 1000);
+                    }
 
-                    if (json.has("data"))
+                    if (points != null)
                     {
-                        JsonObject data = json.getAsJsonObject("data");
-                        long timestamp = json.has("timestamp") ? json.get("timestamp").getAsLong() : System.currentTimeMillis() / 1000;
+                        PriceChangeEvent.Builder changes = new PriceChangeEvent.Builder(PriceChangeEvent.Source.FIVE_MINUTE);
+                        HistoryWrites writes = new HistoryWrites(points.size());
 
-                        for (Map.Entry<String, JsonElement> entry : data.entrySet())
+                        for (int row = 0; row < points.size(); row++)
                         {
-                            try
+                            int itemId = points.itemId(row);
+                            long timestamp = points.timestamp(row);
+                            int avgHigh = points.high(row);
+                            int avgLow = points.low(row);
+                            long highVolume = points.highVolume(row);
+                            long lowVolume = points.lowVolume(row);
+
+                            // Add to history (the ring buffer keeps the last 24 hours of 5-min data)
+                            if (appendPoint(fiveMinHistory, fiveMinIndicators, priceSketches, fiveMinStore, FIVE_MIN_POINTS,
+                                    itemId, timestamp, avgHigh, avgLow, highVolume, lowVolume))
                             {
-                                int itemId = Integer.parseInt(entry.getKey());
-                                JsonObject itemData = entry.getValue().getAsJsonObject();
-
-                                PricePoint point = new PricePoint();
-                                point.timestamp = timestamp;
-                                point.avgHighPrice = itemData.has("avgHighPrice") && !itemData.get("avgHighPrice").isJsonNull()
-                                        ? itemData.get("avgHighPrice").getAsInt() : 0;
-                                point.avgLowPrice = itemData.has("avgLowPrice") && !itemData.get("avgLowPrice").isJsonNull()
-                                        ? itemData.get("avgLowPrice").getAsInt() : 0;
-                                point.highPriceVolume = itemData.has("highPriceVolume") && !itemData.get("highPriceVolume").isJsonNull()
-                                        ? itemData.get("highPriceVolume").getAsLong() : 0;
-                                point.lowPriceVolume = itemData.has("lowPriceVolume") && !itemData.get("lowPriceVolume").isJsonNull()
-                                        ? itemData.get("lowPriceVolume").getAsLong() : 0;
-
-                                // Add to history (keep last 288 points = 24 hours of 5-min data)
-                                fiveMinHistory.computeIfAbsent(itemId, k -> new ArrayList<>()).add(point);
-                                trimHistory(fiveMinHistory.get(itemId), 288);
-
+                                writes.add(HistorySegmentStore.FIVE_MINUTE, timestamp, itemId, avgHigh, avgLow, highVolume, lowVolume);
+                                PriceRollup.Bar hour = hourRollup.add(itemId, timestamp, avgHigh, avgLow, highVolume, lowVolume);
+                                if (hour != null)
+                                {
+                                    addHourly(itemId, hour.timestamp, hour.high, hour.low, hour.highVolume, hour.lowVolume, writes);
+                                }
+                                changes.add(itemId, PriceChangeEvent.HISTORY);
                             }
-                            catch (NumberFormatException ignored) {}
                         }
 
                         lastFiveMinFetch = System.currentTimeMillis();
-                        log.info("Fetched 5-minute data for {} items", data.size());
+                        ingested = true;
+                        log.info("Fetched 5-minute data for {} items", points.size());
+                        metrics.parsed(parseStart, points.size());
+                        publishChanges(changes);
+                        persist(writes);
                     }
                 }
                 catch (Exception e)
                 {
                     log.error("Error parsing 5-minute data", e);
+                    metrics.failed();
                 }
                 finally
                 {
                     response.close();
-                    if (onComplete != null) onComplete.run();
+                    if (ingested)
+                    {
+                        inFlight.complete(key);
+                    }
+                    else
+                    {
+                        inFlight.fail(key);
+                    }
                 }
             }
         });
@@ -158,12 +372,27 @@ public class PriceHistoryService
      * Best for: Medium-term trends, daily patterns
      */
     public void fetchOneHourData(Runnable onComplete)
+    {
+        fetchOneHourData(onComplete, onComplete);
+    }
+
+    /**
+     * Same as {@link #fetchOneHourData(Runnable)}, but with separate callbacks for success and failure
+     */
+    public void fetchOneHourData(Runnable onSuccess, Runnable onFailure)
     {
         long now = System.currentTimeMillis();
         if (now - lastOneHourFetch < ONE_HOUR_CACHE_MS && !oneHourHistory.isEmpty())
         {
             log.debug("Using cached 1-hour data");
-            if (onComplete != null) onComplete.run();
+            if (onSuccess != null) onSuccess.run();
+            return;
+        }
+
+        final String key = "1h";
+        if (!inFlight.join(key, onSuccess, onFailure))
+        {
+            log.debug("Joining in-flight 1-hour fetch");
             return;
         }
 
@@ -174,72 +403,80 @@ public class PriceHistoryService
 
         log.info("Fetching 1-hour price data from Wiki API...");
 
+        final WikiApiMetrics.Endpoint metrics = apiMetrics.endpoint(WikiApiMetrics.ONE_HOUR);
+        final long started = metrics.start();
         okHttpClient.newCall(request).enqueue(new Callback()
         {
             @Override
             public void onFailure(Call call, IOException e)
             {
                 log.warn("Failed to fetch 1-hour data: {}", e.getMessage());
-                if (onComplete != null) onComplete.run();
+                metrics.failed();
+                inFlight.fail(key);
             }
 
             @Override
             public void onResponse(Call call, Response response) throws IOException
             {
+                metrics.responded(started);
+                boolean ingested = false;
+
                 try
                 {
                     if (!response.isSuccessful())
                     {
                         log.warn("1-hour API returned error: {}", response.code());
+                        metrics.failed();
                         return;
                     }
 
-                    String body = response.body().string();
-                    JsonObject json = gson.fromJson(body, JsonObject.class);
+                    long parseStart = System.nanoTime();
+                    WikiFeedDecoder.Points points;
+                    try (JsonReader reader = openCounted(response, metrics))
+                    {
+                        points = WikiFeedDecoder.read(reader, System.currentTimeMillis() / 1000);
+                    }
 
-                    if (json.has("data"))
+                    if (points != null)
                     {
-                        JsonObject data = json.getAsJsonObject("data");
-                        long timestamp = json.has("timestamp") ? json.get("timestamp").getAsLong() : System.currentTimeMillis() / 1000;
+                        PriceChangeEvent.Builder changes = new PriceChangeEvent.Builder(PriceChangeEvent.Source.ONE_HOUR);
+                        HistoryWrites writes = new HistoryWrites(points.size());
 
-                        for (Map.Entry<String, JsonElement> entry : data.entrySet())
+                        for (int row = 0; row < points.size(); row++)
                         {
-                            try
+                            // Add to history (the ring buffer keeps the last 7 days of hourly data)
+                            int itemId = points.itemId(row);
+                            if (addHourly(itemId, points.timestamp(row), points.high(row), points.low(row),
+                                    points.highVolume(row), points.lowVolume(row), writes))
                             {
-                                int itemId = Integer.parseInt(entry.getKey());
-                                JsonObject itemData = entry.getValue().getAsJsonObject();
-
-                                PricePoint point = new PricePoint();
-                                point.timestamp = timestamp;
-                                point.avgHighPrice = itemData.has("avgHighPrice") && !itemData.get("avgHighPrice").isJsonNull()
-                                        ? itemData.get("avgHighPrice").getAsInt() : 0;
-                                point.avgLowPrice = itemData.has("avgLowPrice") && !itemData.get("avgLowPrice").isJsonNull()
-                                        ? itemData.get("avgLowPrice").getAsInt() : 0;
-                                point.highPriceVolume = itemData.has("highPriceVolume") && !itemData.get("highPriceVolume").isJsonNull()
-                                        ? itemData.get("highPriceVolume").getAsLong() : 0;
-                                point.lowPriceVolume = itemData.has("lowPriceVolume") && !itemData.get("lowPriceVolume").isJsonNull()
-                                        ? itemData.get("lowPriceVolume").getAsLong() : 0;
-
-                                // Add to history (keep last 168 points = 7 days of hourly data)
-                                oneHourHistory.computeIfAbsent(itemId, k -> new ArrayList<>()).add(point);
-                                trimHistory(oneHourHistory.get(itemId), 168);
-
+                                changes.add(itemId, PriceChangeEvent.HISTORY);
                             }
-                            catch (NumberFormatException ignored) {}
                         }
 
                         lastOneHourFetch = System.currentTimeMillis();
-                        log.info("Fetched 1-hour data for {} items", data.size());
+                        ingested = true;
+                        log.info("Fetched 1-hour data for {} items", points.size());
+                        metrics.parsed(parseStart, points.size());
+                        publishChanges(changes);
+                        persist(writes);
                     }
                 }
                 catch (Exception e)
                 {
                     log.error("Error parsing 1-hour data", e);
+                    metrics.failed();
                 }
                 finally
                 {
                     response.close();
-                    if (onComplete != null) onComplete.run();
+                    if (ingested)
+                    {
+                        inFlight.complete(key);
+                    }
+                    else
+                    {
+                        inFlight.fail(key);
+                    }
                 }
             }
         });
@@ -251,11 +488,27 @@ public class PriceHistoryService
      */
     public void fetchTimeSeries(int itemId, String timestep, Runnable onComplete)
     {
-        Long lastFetch = lastTimeSeriesFetch.get(itemId);
-        if (lastFetch != null && System.currentTimeMillis() - lastFetch < TIMESERIES_CACHE_MS)
+        fetchTimeSeries(itemId, timestep, onComplete, onComplete);
+    }
+
+    /**
+     * Same as {@link #fetchTimeSeries(int, String, Runnable)}, but with separate callbacks for success and failure.
+     * A 5m, 1h, 6h or 24h timeseries is also merged into that tier of the price history.
+     */
+    public void fetchTimeSeries(int itemId, String timestep, Runnable onSuccess, Runnable onFailure)
+    {
+        final String key = timeSeriesKey(itemId, timestep);
+        Long fetchedAt = timeSeriesCache.get(key);
+        if (fetchedAt != null && System.currentTimeMillis() - fetchedAt < TIMESERIES_CACHE_MS)
         {
-            log.debug("Using cached timeseries for item {}", itemId);
-            if (onComplete != null) onComplete.run();
+            log.debug("Timeseries for item {} was fetched recently, using the merged history", itemId);
+            if (onSuccess != null) onSuccess.run();
+            return;
+        }
+
+        if (!inFlight.join(key, onSuccess, onFailure))
+        {
+            log.debug("Joining in-flight timeseries fetch for item {}", itemId);
             return;
         }
 
@@ -265,380 +518,688 @@ public class PriceHistoryService
                 .header("User-Agent", USER_AGENT)
                 .build();
 
-        log.info("Fetching timeseries for item {} with timestep {}", itemId, timestep);
+        log.debug("Fetching timeseries for item {} with timestep {}", itemId, timestep);
 
+        final WikiApiMetrics.Endpoint metrics = apiMetrics.endpoint(WikiApiMetrics.TIMESERIES);
+        final long started = metrics.start();
         okHttpClient.newCall(request).enqueue(new Callback()
         {
             @Override
             public void onFailure(Call call, IOException e)
             {
                 log.warn("Failed to fetch timeseries for item {}: {}", itemId, e.getMessage());
-                if (onComplete != null) onComplete.run();
+                metrics.failed();
+                inFlight.fail(key);
             }
 
             @Override
             public void onResponse(Call call, Response response) throws IOException
             {
+                metrics.responded(started);
+                boolean ingested = false;
                 try
                 {
                     if (!response.isSuccessful())
                     {
                         log.warn("Timeseries API returned error: {}", response.code());
+                        metrics.failed();
                         return;
                     }
 
-                    String body = response.body().string();
-                    JsonObject json = gson.fromJson(body, JsonObject.class);
+                    long parseStart = System.nanoTime();
+                    WikiFeedDecoder.Points decoded;
+                    try (JsonReader reader = openCounted(response, metrics))
+                    {
+                        decoded = WikiFeedDecoder.read(reader, System.currentTimeMillis() / 1000);
+                    }
 
-                    if (json.has("data"))
+                    if (decoded != null)
                     {
-                        JsonArray dataArray = json.getAsJsonArray("data");
-                        List<PricePoint> points = new ArrayList<>();
+                        PriceSeries points = new HeapPriceSeries(Math.max(decoded.size(), 1));
+                        for (int row = 0; row < decoded.size(); row++)
+                        {
+                            points.add(decoded.timestamp(row), decoded.high(row), decoded.low(row),
+                                    decoded.highVolume(row), decoded.lowVolume(row));
+                        }
+
+                        timeSeriesCache.put(key, System.currentTimeMillis());
 
-                        for (JsonElement elem : dataArray)
+                        // Mapped series are saved as they change; heap ones need a new snapshot
+                        boolean mergedOnHeap = false;
+                        if ("5m".equals(timestep))
+                        {
+                            mergeHistory(fiveMinHistory, fiveMinIndicators, fiveMinStore, FIVE_MIN_POINTS, itemId, points);
+                            priceSketches.remove(itemId);
+                            mergedOnHeap = fiveMinStore == null;
+                        }
+                        else if ("1h".equals(timestep))
+                        {
+                            mergeHistory(oneHourHistory, oneHourIndicators, oneHourStore, ONE_HOUR_POINTS, itemId, points);
+                            mergedOnHeap = oneHourStore == null;
+                        }
+                        else if ("6h".equals(timestep))
+                        {
+                            mergeHistory(sixHourHistory, null, null, SIX_HOUR_POINTS, itemId, points);
+                            mergedOnHeap = true;
+                        }
+                        else if ("24h".equals(timestep))
+                        {
+                            mergeHistory(oneDayHistory, null, null, ONE_DAY_POINTS, itemId, points);
+                            mergedOnHeap = true;
+                        }
+                        if (mergedOnHeap)
                         {
-                            JsonObject point = elem.getAsJsonObject();
-                            PricePoint pp = new PricePoint();
-                            pp.timestamp = point.get("timestamp").getAsLong();
-                            pp.avgHighPrice = point.has("avgHighPrice") && !point.get("avgHighPrice").isJsonNull()
-                                    ? point.get("avgHighPrice").getAsInt() : 0;
-                            pp.avgLowPrice = point.has("avgLowPrice") && !point.get("avgLowPrice").isJsonNull()
-                                    ? point.get("avgLowPrice").getAsInt() : 0;
-                            pp.highPriceVolume = point.has("highPriceVolume") && !point.get("highPriceVolume").isJsonNull()
-                                    ? point.get("highPriceVolume").getAsLong() : 0;
-                            pp.lowPriceVolume = point.has("lowPriceVolume") && !point.get("lowPriceVolume").isJsonNull()
-                                    ? point.get("lowPriceVolume").getAsLong() : 0;
-                            points.add(pp);
+                            scheduleCompaction();
                         }
 
-                        timeSeriesHistory.put(itemId, points);
-                        lastTimeSeriesFetch.put(itemId, System.currentTimeMillis());
-                        log.info("Fetched {} timeseries points for item {}", points.size(), itemId);
+                        ingested = true;
+                        log.debug("Fetched {} timeseries points for item {}", points.size(), itemId);
+                        metrics.parsed(parseStart, points.size());
+                        publishChanges(new PriceChangeEvent.Builder(PriceChangeEvent.Source.TIMESERIES)
+                                .add(itemId, PriceChangeEvent.HISTORY));
                     }
                 }
                 catch (Exception e)
                 {
                     log.error("Error parsing timeseries data", e);
+                    metrics.failed();
                 }
                 finally
                 {
                     response.close();
-                    if (onComplete != null) onComplete.run();
+                    if (ingested)
+                    {
+                        inFlight.complete(key);
+                    }
+                    else
+                    {
+                        inFlight.fail(key);
+                    }
                 }
             }
         });
     }
 
+    private static String timeSeriesKey(int itemId, String timestep)
+    {
+        return "timeseries:" + itemId + ":" + timestep;
+    }
+
     /**
-     * Get calculated metrics for an item
+     * Size and hit/miss/eviction counts of the timeseries cache, for the debug stats
      */
-    public ItemMetrics getMetrics(int itemId)
+    public String getTimeSeriesCacheStats()
     {
-        return metricsCache.get(itemId);
+        return timeSeriesCache.stats();
     }
 
     /**
-     * Calculate and cache metrics for all tracked items
+     * Merge fetched points into an item's series. Both are oldest first; where they share a
+     * timestamp the point already held wins, and only the newest capacity points are kept.
      */
-    public void calculateAllMetrics()
+    private static void mergeHistory(Map<Integer, PriceSeries> history, Map<Integer, IndicatorState> indicators,
+                                     MappedSeriesStore store, int capacity, int itemId, PriceSeries fetched)
     {
-        Set<Integer> allItems = new HashSet<>();
-        allItems.addAll(fiveMinHistory.keySet());
-        allItems.addAll(oneHourHistory.keySet());
-
-        for (int itemId : allItems)
+        PriceSeries series = history.computeIfAbsent(itemId, k -> newSeries(store, k, capacity));
+        synchronized (series)
         {
-            ItemMetrics metrics = calculateMetrics(itemId);
-            if (metrics != null)
+            PriceSeries merged = new HeapPriceSeries(capacity);
+            int i = 0;
+            int j = 0;
+            long last = Long.MIN_VALUE;
+            while (i < series.size() || j < fetched.size())
             {
-                metricsCache.put(itemId, metrics);
+                boolean takeHeld = j >= fetched.size()
+                        || (i < series.size() && series.timestamp(i) <= fetched.timestamp(j));
+                PriceSeries source = takeHeld ? series : fetched;
+                int index = takeHeld ? i++ : j++;
+                long timestamp = source.timestamp(index);
+                if (timestamp <= last) continue;
+
+                merged.add(timestamp, source.high(index), source.low(index),
+                        source.highVolume(index), source.lowVolume(index));
+                last = timestamp;
             }
-        }
 
-        log.info("Calculated metrics for {} items", metricsCache.size());
+            series.clear();
+            for (int k = 0; k < merged.size(); k++)
+            {
+                series.add(merged.timestamp(k), merged.high(k), merged.low(k),
+                        merged.highVolume(k), merged.lowVolume(k));
+            }
+
+            // Older points were inserted, so the running indicators have to start over
+            if (indicators != null) indicators.remove(itemId);
+        }
     }
 
     /**
-     * Calculate comprehensive metrics for a single item
+     * True if an item's history at that timestep (5m, 1h, 6h or 24h) is less than half full
      */
-    public ItemMetrics calculateMetrics(int itemId)
+    public boolean needsBackfill(int itemId, String timestep)
     {
-        List<PricePoint> shortTerm = fiveMinHistory.get(itemId);
-        List<PricePoint> mediumTerm = oneHourHistory.get(itemId);
+        PriceSeries series = tier(timestep).get(itemId);
+        return series == null || series.size() < series.capacity() / 2;
+    }
 
-        if ((shortTerm == null || shortTerm.isEmpty()) && (mediumTerm == null || mediumTerm.isEmpty()))
+    private Map<Integer, PriceSeries> tier(String timestep)
+    {
+        switch (timestep)
         {
-            return null;
+            case "1h":
+                return oneHourHistory;
+            case "6h":
+                return sixHourHistory;
+            case "24h":
+                return oneDayHistory;
+            default:
+                return fiveMinHistory;
         }
+    }
 
-        ItemMetrics metrics = new ItemMetrics();
-        metrics.itemId = itemId;
-        metrics.calculatedAt = System.currentTimeMillis();
+    /**
+     * History for an item covering the last windowSeconds, taken from the finest tier whose
+     * retention spans the window: 5m up to a day, 1h up to a week, 6h up to 30 days, and 24h
+     * beyond that. Returns null if that tier has nothing for the item yet.
+     *
+     * Readers should hold the series lock while reading several points.
+     */
+    public PriceSeries getHistory(int itemId, long windowSeconds)
+    {
+        if (windowSeconds <= FIVE_MIN_POINTS * FIVE_MIN_SECONDS) return fiveMinHistory.get(itemId);
+        if (windowSeconds <= ONE_HOUR_POINTS * ONE_HOUR_SECONDS) return oneHourHistory.get(itemId);
+        if (windowSeconds <= SIX_HOUR_POINTS * SIX_HOUR_SECONDS) return sixHourHistory.get(itemId);
+        return oneDayHistory.get(itemId);
+    }
 
-        // Use whichever data we have
-        List<PricePoint> primaryData = shortTerm != null && !shortTerm.isEmpty() ? shortTerm : mediumTerm;
+    /**
+     * Percentage change of the high price over the last windowSeconds, or 0 if there is
+     * not enough history. The window start is found by binary search on the timestamps.
+     */
+    public double getChangePercent(int itemId, long windowSeconds)
+    {
+        PriceSeries series = getHistory(itemId, windowSeconds);
+        if (series == null) return 0;
 
-        if (primaryData.size() >= 2)
+        synchronized (series)
         {
-            // Current prices (most recent)
-            PricePoint latest = primaryData.get(primaryData.size() - 1);
-            metrics.currentHigh = latest.avgHighPrice;
-            metrics.currentLow = latest.avgLowPrice;
-            metrics.currentMargin = latest.avgHighPrice - latest.avgLowPrice;
-            metrics.currentVolume = latest.highPriceVolume + latest.lowPriceVolume;
-
-            // Calculate spread percentage
-            if (latest.avgLowPrice > 0)
-            {
-                metrics.spreadPercent = (double) metrics.currentMargin / latest.avgLowPrice * 100;
-            }
-
-            // Price changes
-            if (primaryData.size() >= 12) // At least 1 hour of 5-min data
-            {
-                PricePoint hourAgo = primaryData.get(primaryData.size() - 12);
-                metrics.priceChange1h = latest.avgHighPrice - hourAgo.avgHighPrice;
-                metrics.priceChangePercent1h = hourAgo.avgHighPrice > 0
-                        ? (double) metrics.priceChange1h / hourAgo.avgHighPrice * 100 : 0;
-            }
+            int size = series.size();
+            if (size < 2) return 0;
 
-            if (primaryData.size() >= 72) // 6 hours
+            long from = series.timestamp(size - 1) - windowSeconds;
+            int lo = 0;
+            int hi = size - 1;
+            while (lo < hi)
             {
-                PricePoint sixHoursAgo = primaryData.get(primaryData.size() - 72);
-                metrics.priceChange6h = latest.avgHighPrice - sixHoursAgo.avgHighPrice;
-                metrics.priceChangePercent6h = sixHoursAgo.avgHighPrice > 0
-                        ? (double) metrics.priceChange6h / sixHoursAgo.avgHighPrice * 100 : 0;
+                int mid = (lo + hi) >>> 1;
+                if (series.timestamp(mid) < from) lo = mid + 1;
+                else hi = mid;
             }
 
-            // Volatility (standard deviation of price changes)
-            metrics.volatility = calculateVolatility(primaryData);
-
-            // Trend strength (using simple linear regression slope)
-            metrics.trendStrength = calculateTrendStrength(primaryData);
-
-            // Volume trend
-            metrics.volumeTrend = calculateVolumeTrend(primaryData);
+            int then = series.high(lo);
+            int now = series.high(size - 1);
+            if (lo == size - 1 || then <= 0 || now <= 0) return 0;
+            return (double) (now - then) / then * 100;
+        }
+    }
 
-            // Margin stability (how consistent is the spread)
-            metrics.marginStability = calculateMarginStability(primaryData);
+    /**
+     * Snapshot the heap history shortly after timeseries points were merged into it. The
+     * append-only log can't hold points merged into the middle of a series, and waiting a
+     * little lets a burst of merges (a backfill) share one snapshot.
+     */
+    private void scheduleCompaction()
+    {
+        if (compactPending.compareAndSet(false, true))
+        {
+            executor.schedule(this::compactIfPending, COMPACT_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
 
-            // RSI (Relative Strength Index)
-            metrics.rsi = calculateRSI(primaryData, 14);
+    /**
+     * Write the snapshot scheduled by {@link #scheduleCompaction}, if it is still due.
+     * Skipped once the history is closed, as the maps are empty then.
+     */
+    private synchronized void compactIfPending()
+    {
+        if (opened && compactPending.getAndSet(false))
+        {
+            compactHistory();
+        }
+    }
 
-            // Moving averages
-            metrics.sma12 = calculateSMA(primaryData, 12);
-            metrics.sma24 = calculateSMA(primaryData, 24);
-            metrics.ema12 = calculateEMA(primaryData, 12);
+    /**
+     * Write the heap-resident history out as a fresh snapshot
+     */
+    private void compactHistory()
+    {
+        try
+        {
+            segmentStore.compact(heapHistory());
         }
+        catch (IOException e)
+        {
+            log.warn("Failed to write price history snapshot: {}", e.getMessage());
+        }
+    }
 
-        return metrics;
+    /**
+     * Open a JSON reader over the response body that counts the bytes read into the endpoint's metrics
+     */
+    private JsonReader openCounted(Response response, WikiApiMetrics.Endpoint metrics)
+    {
+        return gson.newJsonReader(new InputStreamReader(
+                metrics.count(response.body().byteStream()), StandardCharsets.UTF_8));
     }
 
     /**
-     * Calculate price volatility (coefficient of variation)
+     * Register a listener for history updates. Listeners are called on the HTTP thread after each fetch.
      */
-    private double calculateVolatility(List<PricePoint> data)
+    public void addPriceChangeListener(PriceChangeListener listener)
+    {
+        if (listener != null && !changeListeners.contains(listener))
+        {
+            changeListeners.add(listener);
+        }
+    }
+
+    public void removePriceChangeListener(PriceChangeListener listener)
+    {
+        changeListeners.remove(listener);
+    }
+
+    private void publishChanges(PriceChangeEvent.Builder changes)
     {
-        if (data.size() < 2) return 0;
+        if (changes.isEmpty()) return;
 
-        // Calculate returns
-        List<Double> returns = new ArrayList<>();
-        for (int i = 1; i < data.size(); i++)
+        PriceChangeEvent event = changes.build(historyVersion.incrementAndGet());
+
+        // Stamp before notifying, so listeners that ask for metrics get fresh ones
+        Long version = event.getVersion();
+        for (int i = 0; i < event.size(); i++)
         {
-            if (data.get(i - 1).avgHighPrice > 0)
+            seriesVersions.put(event.itemId(i), version);
+        }
+
+        log.debug("Publishing {}", event);
+        for (PriceChangeListener listener : changeListeners)
+        {
+            try
             {
-                double ret = (double)(data.get(i).avgHighPrice - data.get(i - 1).avgHighPrice)
-                        / data.get(i - 1).avgHighPrice;
-                returns.add(ret);
+                listener.onPriceChange(event);
+            }
+            catch (Exception e)
+            {
+                log.error("Error notifying price change listener", e);
             }
         }
+    }
 
-        if (returns.isEmpty()) return 0;
+    /**
+     * Get metrics for an item, calculating them only if its history has new points
+     * since the cached metrics were calculated. Returns null if there is no history for the item.
+     */
+    public ItemMetrics getMetrics(int itemId)
+    {
+        ItemMetrics cached = metricsCache.get(itemId);
+        long changedAt = seriesVersions.getOrDefault(itemId, 0L);
+        if (cached != null && cached.historyVersion >= changedAt)
+        {
+            return cached;
+        }
 
-        // Calculate standard deviation
-        double mean = returns.stream().mapToDouble(d -> d).average().orElse(0);
-        double variance = returns.stream().mapToDouble(d -> Math.pow(d - mean, 2)).average().orElse(0);
+        // Read the version first: points that land mid-calculation will be stamped later than this
+        long version = historyVersion.get();
+        ItemMetrics metrics = calculateMetrics(itemId);
+        if (metrics == null)
+        {
+            return null;
+        }
 
-        return Math.sqrt(variance) * 100; // As percentage
+        metrics.historyVersion = version;
+        metricsCache.put(itemId, metrics);
+        return metrics;
     }
 
     /**
-     * Calculate trend strength using linear regression
-     * Positive = uptrend, Negative = downtrend, Near 0 = sideways
+     * Calculate comprehensive metrics for a single item.
+     * Reads the item's running indicator state, so this is O(1) once the state has been built.
      */
-    private double calculateTrendStrength(List<PricePoint> data)
+    public ItemMetrics calculateMetrics(int itemId)
     {
-        if (data.size() < 5) return 0;
+        PriceSeries shortTerm = fiveMinHistory.get(itemId);
+        PriceSeries mediumTerm = oneHourHistory.get(itemId);
 
-        int n = data.size();
-        double sumX = 0, sumY = 0, sumXY = 0, sumX2 = 0;
+        if ((shortTerm == null || shortTerm.isEmpty()) && (mediumTerm == null || mediumTerm.isEmpty()))
+        {
+            return null;
+        }
+
+        ItemMetrics metrics = new ItemMetrics();
+        metrics.itemId = itemId;
+        metrics.calculatedAt = System.currentTimeMillis();
 
-        for (int i = 0; i < n; i++)
+        // Use whichever data we have
+        boolean useShortTerm = shortTerm != null && !shortTerm.isEmpty();
+        PriceSeries primaryData = useShortTerm ? shortTerm : mediumTerm;
+        Map<Integer, IndicatorState> indicators = useShortTerm ? fiveMinIndicators : oneHourIndicators;
+
+        // Hold the series lock so a concurrent append can't shift the points mid-calculation
+        synchronized (primaryData)
+        {
+            indicators.computeIfAbsent(itemId, k -> IndicatorState.of(primaryData)).fill(primaryData, metrics);
+        }
+
+        // Spread percentiles, and a stability figure that a few spikes can't skew
+        PriceSketch sketch = getPriceSketch(itemId);
+        if (sketch != null && sketch.spreadCount() >= MIN_SKETCH_POINTS)
         {
-            double x = i;
-            double y = data.get(i).avgHighPrice;
-            sumX += x;
-            sumY += y;
-            sumXY += x * y;
-            sumX2 += x * x;
+            metrics.spreadP10 = (int) sketch.spreadQuantile(0.1);
+            metrics.spreadP50 = (int) sketch.spreadQuantile(0.5);
+            metrics.spreadP90 = (int) sketch.spreadQuantile(0.9);
+            metrics.robustMarginStability = metrics.spreadP50 > 0
+                    ? (metrics.spreadP90 - metrics.spreadP10) / P10_P90_SIGMAS / metrics.spreadP50 * 100
+                    : 100;
         }
 
-        double slope = (n * sumXY - sumX * sumY) / (n * sumX2 - sumX * sumX);
-        double avgPrice = sumY / n;
+        // Longer trends come from the coarser tiers
+        metrics.weeklyChangePercent = getChangePercent(itemId, WEEK_SECONDS);
+        metrics.monthlyChangePercent = getChangePercent(itemId, MONTH_SECONDS);
 
-        // Normalize slope by average price to get percentage trend per period
-        return avgPrice > 0 ? (slope / avgPrice) * 100 : 0;
+        return metrics;
     }
 
     /**
-     * Calculate volume trend (is volume increasing or decreasing?)
+     * An item's spread distribution, or null if it has no 5m history
      */
-    private double calculateVolumeTrend(List<PricePoint> data)
+    PriceSketch getPriceSketch(int itemId)
     {
-        if (data.size() < 10) return 0;
-
-        // Compare recent volume (last 5) to earlier volume (5 before that)
-        long recentVolume = 0;
-        long earlierVolume = 0;
+        PriceSketch sketch = priceSketches.get(itemId);
+        if (sketch != null)
+        {
+            return sketch;
+        }
 
-        int size = data.size();
-        for (int i = size - 5; i < size; i++)
+        PriceSeries series = fiveMinHistory.get(itemId);
+        if (series == null)
         {
-            recentVolume += data.get(i).highPriceVolume + data.get(i).lowPriceVolume;
+            return null;
         }
-        for (int i = size - 10; i < size - 5; i++)
+        synchronized (series)
         {
-            earlierVolume += data.get(i).highPriceVolume + data.get(i).lowPriceVolume;
+            return priceSketches.computeIfAbsent(itemId, k -> PriceSketch.of(series));
         }
+    }
+
+    /**
+     * Append a point to an item's series and fold it into the item's running indicators and sketch (if tracked).
+     * Returns false, and changes nothing, if the series already has a point at or after this timestamp.
+     */
+    private static boolean appendPoint(Map<Integer, PriceSeries> history, Map<Integer, IndicatorState> indicators,
+                                       Map<Integer, PriceSketch> sketches, MappedSeriesStore store, int capacity, int itemId,
+                                       long timestamp, int avgHigh, int avgLow, long highVol, long lowVol)
+    {
+        PriceSeries series = history.computeIfAbsent(itemId, k -> newSeries(store, k, capacity));
+        synchronized (series)
+        {
+            int size = series.size();
+            if (size > 0 && timestamp <= series.timestamp(size - 1))
+            {
+                return false;
+            }
+
+            IndicatorState state = indicators == null ? null : indicators.get(itemId);
+            if (state != null)
+            {
+                state.append(series, timestamp, avgHigh, avgLow, highVol, lowVol);
+            }
+            else
+            {
+                series.add(timestamp, avgHigh, avgLow, highVol, lowVol);
+                if (indicators != null) indicators.put(itemId, IndicatorState.of(series));
+            }
 
-        if (earlierVolume == 0) return 0;
-        return ((double)(recentVolume - earlierVolume) / earlierVolume) * 100;
+            // Under the series lock, so a sketch being built from the series can't count the point twice
+            PriceSketch sketch = sketches == null ? null : sketches.get(itemId);
+            if (sketch != null)
+            {
+                sketch.add(avgHigh, avgLow);
+            }
+            return true;
+        }
     }
 
     /**
-     * Calculate margin stability (lower = more stable)
+     * Add an hourly bar (from the /1h feed or rolled up from 5m data) and cascade it into the 6h and 24h tiers.
+     * Returns false if the item already has a bar for that hour.
      */
-    private double calculateMarginStability(List<PricePoint> data)
+    private boolean addHourly(int itemId, long timestamp, int avgHigh, int avgLow, long highVol, long lowVol, HistoryWrites writes)
     {
-        if (data.size() < 5) return 100; // Unknown = unstable
+        if (!appendPoint(oneHourHistory, oneHourIndicators, null, oneHourStore, ONE_HOUR_POINTS, itemId,
+                timestamp, avgHigh, avgLow, highVol, lowVol))
+        {
+            return false;
+        }
+        writes.add(HistorySegmentStore.ONE_HOUR, timestamp, itemId, avgHigh, avgLow, highVol, lowVol);
 
-        List<Integer> margins = new ArrayList<>();
-        for (PricePoint point : data)
+        PriceRollup.Bar sixHour = sixHourRollup.add(itemId, timestamp, avgHigh, avgLow, highVol, lowVol);
+        if (sixHour == null || !appendPoint(sixHourHistory, null, null, null, SIX_HOUR_POINTS, itemId,
+                sixHour.timestamp, sixHour.high, sixHour.low, sixHour.highVolume, sixHour.lowVolume))
         {
-            margins.add(point.avgHighPrice - point.avgLowPrice);
+            return true;
         }
+        writes.add(HistorySegmentStore.SIX_HOUR, sixHour.timestamp, itemId, sixHour.high, sixHour.low, sixHour.highVolume, sixHour.lowVolume);
 
-        double mean = margins.stream().mapToInt(i -> i).average().orElse(0);
-        if (mean == 0) return 100;
+        PriceRollup.Bar day = dayRollup.add(itemId, sixHour.timestamp, sixHour.high, sixHour.low, sixHour.highVolume, sixHour.lowVolume);
+        if (day != null && appendPoint(oneDayHistory, null, null, null, ONE_DAY_POINTS, itemId,
+                day.timestamp, day.high, day.low, day.highVolume, day.lowVolume))
+        {
+            writes.add(HistorySegmentStore.ONE_DAY, day.timestamp, itemId, day.high, day.low, day.highVolume, day.lowVolume);
+        }
+        return true;
+    }
 
-        double variance = margins.stream().mapToDouble(m -> Math.pow(m - mean, 2)).average().orElse(0);
-        double stdDev = Math.sqrt(variance);
+    /**
+     * Reopen the rollup buckets that were still filling when the history was saved,
+     * so the first bars after a restart aren't built from a partial bucket
+     */
+    private void seedRollups()
+    {
+        seedRollup(hourRollup, fiveMinHistory);
+        seedRollup(sixHourRollup, oneHourHistory);
+        seedRollup(dayRollup, sixHourHistory);
+    }
 
-        // Coefficient of variation (lower = more stable)
-        return (stdDev / mean) * 100;
+    private static void seedRollup(PriceRollup rollup, Map<Integer, PriceSeries> source)
+    {
+        for (Map.Entry<Integer, PriceSeries> entry : source.entrySet())
+        {
+            PriceSeries series = entry.getValue();
+            synchronized (series)
+            {
+                int size = series.size();
+                if (size == 0) continue;
+
+                long bucket = rollup.bucketStart(series.timestamp(size - 1));
+                int first = size - 1;
+                while (first > 0 && series.timestamp(first - 1) >= bucket)
+                {
+                    first--;
+                }
+                for (int i = first; i < size; i++)
+                {
+                    rollup.add(entry.getKey(), series.timestamp(i), series.high(i), series.low(i),
+                            series.highVolume(i), series.lowVolume(i));
+                }
+            }
+        }
     }
 
     /**
-     * Calculate RSI (Relative Strength Index)
-     * < 30 = oversold (potential buy)
-     * > 70 = overbought (potential sell)
+     * Make sure history is on disk. New points are appended to the history log as they
+     * arrive, so all that is left here is writing any snapshot still owed for merged
+     * timeseries points and forcing out the memory-mapped pages.
      */
-    private double calculateRSI(List<PricePoint> data, int periods)
+    public void saveHistory()
     {
-        if (data.size() < periods + 1) return 50; // Neutral
-
-        List<Double> gains = new ArrayList<>();
-        List<Double> losses = new ArrayList<>();
+        compactIfPending();
+        if (fiveMinStore != null) fiveMinStore.force();
+        if (oneHourStore != null) oneHourStore.force();
+    }
 
-        for (int i = data.size() - periods; i < data.size(); i++)
+    /**
+     * Append a fetch to the history log, compacting the log into a new snapshot once it gets large
+     */
+    private void persist(HistoryWrites writes)
+    {
+        try
         {
-            double change = data.get(i).avgHighPrice - data.get(i - 1).avgHighPrice;
-            if (change > 0)
+            boolean compact = false;
+            for (HistorySegmentStore.Batch batch : writes.batches)
             {
-                gains.add(change);
-                losses.add(0.0);
+                compact |= segmentStore.append(batch);
             }
-            else
+            if (compact)
             {
-                gains.add(0.0);
-                losses.add(Math.abs(change));
+                segmentStore.compact(heapHistory());
             }
         }
-
-        double avgGain = gains.stream().mapToDouble(d -> d).average().orElse(0);
-        double avgLoss = losses.stream().mapToDouble(d -> d).average().orElse(0);
-
-        if (avgLoss == 0) return 100;
-        double rs = avgGain / avgLoss;
-        return 100 - (100 / (1 + rs));
+        catch (IOException e)
+        {
+            log.warn("Failed to persist price history: {}", e.getMessage());
+        }
     }
 
     /**
-     * Calculate Simple Moving Average
+     * The resolutions that live on the heap (and so are persisted through the segment store)
      */
-    private int calculateSMA(List<PricePoint> data, int periods)
+    private Map<Byte, Map<Integer, PriceSeries>> heapHistory()
     {
-        if (data.size() < periods) return 0;
+        Map<Byte, Map<Integer, PriceSeries>> history = new LinkedHashMap<>();
+        if (fiveMinStore == null) history.put(HistorySegmentStore.FIVE_MINUTE, fiveMinHistory);
+        if (oneHourStore == null) history.put(HistorySegmentStore.ONE_HOUR, oneHourHistory);
+        history.put(HistorySegmentStore.SIX_HOUR, sixHourHistory);
+        history.put(HistorySegmentStore.ONE_DAY, oneDayHistory);
+        return history;
+    }
 
-        double sum = 0;
-        for (int i = data.size() - periods; i < data.size(); i++)
+    private boolean isHeapResident(byte resolution)
+    {
+        switch (resolution)
         {
-            sum += data.get(i).avgHighPrice;
+            case HistorySegmentStore.FIVE_MINUTE:
+                return fiveMinStore == null;
+            case HistorySegmentStore.ONE_HOUR:
+                return oneHourStore == null;
+            default:
+                return true;
         }
-        return (int) (sum / periods);
     }
 
     /**
-     * Calculate Exponential Moving Average
+     * Log batches for the heap-resident points one fetch added, one per resolution and timestamp
      */
-    private int calculateEMA(List<PricePoint> data, int periods)
+    private final class HistoryWrites
     {
-        if (data.size() < periods) return 0;
-
-        double multiplier = 2.0 / (periods + 1);
-        double ema = data.get(data.size() - periods).avgHighPrice;
+        private final List<HistorySegmentStore.Batch> batches = new ArrayList<>();
+        private final int expectedRows;
 
-        for (int i = data.size() - periods + 1; i < data.size(); i++)
+        HistoryWrites(int expectedRows)
         {
-            ema = (data.get(i).avgHighPrice - ema) * multiplier + ema;
+            this.expectedRows = expectedRows;
         }
 
-        return (int) ema;
+        void add(byte resolution, long timestamp, int itemId, int high, int low, long highVolume, long lowVolume)
+        {
+            if (!isHeapResident(resolution)) return;
+
+            for (HistorySegmentStore.Batch batch : batches)
+            {
+                if (batch.resolution() == resolution && batch.timestamp() == timestamp)
+                {
+                    batch.add(itemId, high, low, highVolume, lowVolume);
+                    return;
+                }
+            }
+
+            HistorySegmentStore.Batch batch = HistorySegmentStore.newBatch(resolution, timestamp, expectedRows);
+            batch.add(itemId, high, low, highVolume, lowVolume);
+            batches.add(batch);
+        }
     }
 
-    private void trimHistory(List<PricePoint> history, int maxSize)
+    private void loadHistory()
     {
-        while (history.size() > maxSize)
+        if (segmentStore.exists())
+        {
+            try
+            {
+                segmentStore.load(this::restorePoint);
+                log.info("Loaded {} 5-min and {} 1-hour cached items", fiveMinHistory.size(), oneHourHistory.size());
+            }
+            catch (IOException e)
+            {
+                log.warn("Failed to load price history: {}", e.getMessage());
+            }
+        }
+        else if (LEGACY_HISTORY_FILE.exists())
         {
-            history.remove(0);
+            migrateLegacyHistory();
         }
     }
 
-    /**
-     * Save history to disk for persistence
-     */
-    public void saveHistory()
+    private void restorePoint(byte resolution, int itemId, long timestamp, int high, int low, long highVolume, long lowVolume)
     {
-        try (Writer writer = new FileWriter(HISTORY_FILE))
+        Map<Integer, PriceSeries> history;
+        int capacity;
+        long step;
+        if (resolution == HistorySegmentStore.FIVE_MINUTE && fiveMinStore == null)
         {
-            HistoryCache cache = new HistoryCache();
-            cache.fiveMinHistory = new HashMap<>(fiveMinHistory);
-            cache.oneHourHistory = new HashMap<>(oneHourHistory);
-            cache.savedAt = System.currentTimeMillis();
-            gson.toJson(cache, writer);
-            log.debug("Saved price history cache");
+            history = fiveMinHistory;
+            capacity = FIVE_MIN_POINTS;
+            step = FIVE_MIN_SECONDS;
         }
-        catch (IOException e)
+        else if (resolution == HistorySegmentStore.ONE_HOUR && oneHourStore == null)
         {
-            log.error("Failed to save price history", e);
+            history = oneHourHistory;
+            capacity = ONE_HOUR_POINTS;
+            step = ONE_HOUR_SECONDS;
         }
+        else if (resolution == HistorySegmentStore.SIX_HOUR)
+        {
+            history = sixHourHistory;
+            capacity = SIX_HOUR_POINTS;
+            step = SIX_HOUR_SECONDS;
+        }
+        else if (resolution == HistorySegmentStore.ONE_DAY)
+        {
+            history = oneDayHistory;
+            capacity = ONE_DAY_POINTS;
+            step = ONE_DAY_SECONDS;
+        }
+        else
+        {
+            return;
+        }
+
+        // Each tier keeps as much time as its buffer spans; anything older is dropped
+        if (timestamp < System.currentTimeMillis() / 1000 - capacity * step) return;
+
+        PriceSeries series = history.computeIfAbsent(itemId, k -> new HeapPriceSeries(capacity));
+
+        // A batch appended while a compaction was running can be in both the snapshot and the log
+        int size = series.size();
+        if (size > 0 && timestamp <= series.timestamp(size - 1)) return;
+
+        series.add(timestamp, high, low, highVolume, lowVolume);
     }
 
-    private void loadCachedHistory()
+    /**
+     * Load the old JSON cache once, write it out as a binary snapshot and delete it
+     */
+    private void migrateLegacyHistory()
     {
-        if (!HISTORY_FILE.exists()) return;
-
-        try (Reader reader = new FileReader(HISTORY_FILE))
+        try (Reader reader = new FileReader(LEGACY_HISTORY_FILE))
         {
             HistoryCache cache = gson.fromJson(reader, HistoryCache.class);
             if (cache != null)
@@ -646,9 +1207,9 @@ public class PriceHistoryService
                 // Only load if cache is less than 24 hours old
                 if (System.currentTimeMillis() - cache.savedAt < TimeUnit.HOURS.toMillis(24))
                 {
-                    if (cache.fiveMinHistory != null) fiveMinHistory.putAll(cache.fiveMinHistory);
-                    if (cache.oneHourHistory != null) oneHourHistory.putAll(cache.oneHourHistory);
-                    log.info("Loaded {} 5-min and {} 1-hour cached items",
+                    if (cache.fiveMinHistory != null && fiveMinStore == null) fromPricePoints(cache.fiveMinHistory, fiveMinHistory, FIVE_MIN_POINTS);
+                    if (cache.oneHourHistory != null && oneHourStore == null) fromPricePoints(cache.oneHourHistory, oneHourHistory, ONE_HOUR_POINTS);
+                    log.info("Loaded {} 5-min and {} 1-hour cached items from the old JSON cache",
                             fiveMinHistory.size(), oneHourHistory.size());
                 }
             }
@@ -657,6 +1218,28 @@ public class PriceHistoryService
         {
             log.warn("Failed to load price history cache: {}", e.getMessage());
         }
+
+        try
+        {
+            segmentStore.compact(heapHistory());
+            Files.deleteIfExists(LEGACY_HISTORY_FILE.toPath());
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to migrate price history cache: {}", e.getMessage());
+        }
+    }
+
+    // The old JSON cache stored plain point lists
+    private static void fromPricePoints(Map<Integer, List<PricePoint>> points, Map<Integer, PriceSeries> history, int capacity)
+    {
+        for (Map.Entry<Integer, List<PricePoint>> entry : points.entrySet())
+        {
+            if (entry.getKey() != null && entry.getValue() != null)
+            {
+                history.put(entry.getKey(), HeapPriceSeries.fromPricePoints(entry.getValue(), capacity));
+            }
+        }
     }
 
     // Data classes
@@ -683,6 +1266,7 @@ public class PriceHistoryService
     {
         public int itemId;
         public long calculatedAt;
+        public long historyVersion;     // History version the metrics were calculated from
 
         // Current state
         public int currentHigh;
@@ -709,6 +1293,27 @@ public class PriceHistoryService
         public int sma24;
         public int ema12;
 
+        // Bands, momentum and risk
+        public int bollingerMiddle;     // 20-period SMA of the high price
+        public int bollingerUpper;      // Middle + 2 standard deviations
+        public int bollingerLower;      // Middle - 2 standard deviations
+        public double macd;             // EMA12 - EMA26 of the high price
+        public double macdSignal;       // 9-period EMA of the MACD
+        public double macdHistogram;    // MACD - signal (positive = momentum building)
+        public int vwap;                // Volume-weighted average of high and low prices
+        public double maxDrawdown;      // Deepest fall from a peak, as a percentage
+        public double currentDrawdown;  // How far the latest high is below the window's peak, as a percentage
+
+        // Spread distribution from the item's sketch (0 until there are enough points)
+        public int spreadP10;
+        public int spreadP50;
+        public int spreadP90;
+        public double robustMarginStability; // Like marginStability, from the 10th-90th percentile range
+
+        // Longer-term trends from the rolled-up history
+        public double weeklyChangePercent;
+        public double monthlyChangePercent;
+
         /**
          * Is this item in an uptrend?
          */
@@ -730,7 +1335,15 @@ public class PriceHistoryService
          */
         public boolean hasStableMargin()
         {
-            return marginStability < 30; // Less than 30% variation
+            return marginVariation() < 30; // Less than 30% variation
+        }
+
+        /**
+         * Margin variation from the spread percentiles when known, otherwise the coefficient of variation
+         */
+        public double marginVariation()
+        {
+            return spreadP90 > 0 ? robustMarginStability : marginStability;
         }
 
         /**
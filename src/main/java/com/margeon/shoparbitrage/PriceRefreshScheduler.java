@@ -0,0 +1,215 @@
+package com.margeon.shoparbitrage;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Client;
+import net.runelite.api.GameState;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.swing.*;
+import java.awt.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the Wiki feeds warm in the background so the panels never have to wait on a fetch.
+ *
+ * Each feed runs on its own cadence: /24h every autoRefreshMinutes, /5m every
+ * 5 minutes and /1h every hour. The next run is scheduled when the previous
+ * one finishes, with a little random jitter so clients don't all hit the API
+ * at the same moment. A failed fetch is retried with exponential backoff.
+ * Nothing is fetched while the client is logged out or minimised, or when
+ * autoRefreshMinutes is 0.
+ */
+@Slf4j
+@Singleton
+public class PriceRefreshScheduler
+{
+    private static final long FIVE_MINUTE_PERIOD_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final long ONE_HOUR_PERIOD_MS = TimeUnit.HOURS.toMillis(1);
+
+    private static final long FIRST_RETRY_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_RETRY_MS = TimeUnit.MINUTES.toMillis(15);
+    private static final long PAUSED_RECHECK_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final long START_SPREAD_MS = TimeUnit.SECONDS.toMillis(5);
+    private static final double JITTER_FRACTION = 0.1;
+
+    private final Client client;
+    private final ScheduledExecutorService executor;
+    private final ShopArbitrageConfigV2 config;
+    private final List<Feed> feeds;
+
+    private volatile boolean running;
+
+    @Inject
+    public PriceRefreshScheduler(Client client, ScheduledExecutorService executor, ShopArbitrageConfigV2 config,
+                                 WikiPriceService wikiPriceService, PriceHistoryService priceHistoryService)
+    {
+        this.client = client;
+        this.executor = executor;
+        this.config = config;
+        this.feeds = Arrays.asList(
+                new Feed("24h", () -> TimeUnit.MINUTES.toMillis(config.autoRefreshMinutes()),
+                        wikiPriceService::refreshLivePrices),
+                new Feed("5m", () -> FIVE_MINUTE_PERIOD_MS, priceHistoryService::fetchFiveMinuteData),
+                new Feed("1h", () -> ONE_HOUR_PERIOD_MS, priceHistoryService::fetchOneHourData)
+        );
+    }
+
+    /**
+     * Start refreshing every feed in the background. Safe to call more than once.
+     */
+    public synchronized void start()
+    {
+        if (running)
+        {
+            return;
+        }
+
+        running = true;
+        log.debug("Starting background price refresh");
+        for (Feed feed : feeds)
+        {
+            // Spread the first runs out a little so the feeds don't all start at once
+            feed.schedule(ThreadLocalRandom.current().nextLong(START_SPREAD_MS));
+        }
+    }
+
+    public synchronized void stop()
+    {
+        if (!running)
+        {
+            return;
+        }
+
+        running = false;
+        log.debug("Stopping background price refresh");
+        for (Feed feed : feeds)
+        {
+            feed.cancel();
+        }
+    }
+
+    /**
+     * True while the client is logged out or its window is minimised
+     */
+    private boolean isPaused()
+    {
+        if (client.getGameState() != GameState.LOGGED_IN)
+        {
+            return true;
+        }
+
+        Canvas canvas = client.getCanvas();
+        Window window = canvas != null ? SwingUtilities.getWindowAncestor(canvas) : null;
+        return window instanceof Frame && (((Frame) window).getExtendedState() & Frame.ICONIFIED) != 0;
+    }
+
+    /**
+     * Add up to JITTER_FRACTION of extra delay. The jitter is only ever added so
+     * a run never lands inside the service's own cache window and gets skipped.
+     */
+    private static long jitter(long delayMs)
+    {
+        return delayMs + (long) (ThreadLocalRandom.current().nextDouble() * delayMs * JITTER_FRACTION);
+    }
+
+    @FunctionalInterface
+    private interface Fetch
+    {
+        void fetch(Runnable onSuccess, Runnable onFailure);
+    }
+
+    /**
+     * One feed's refresh loop: run, wait for the result, schedule the next run
+     */
+    private final class Feed
+    {
+        private final String name;
+        private final LongSupplier periodMs;
+        private final Fetch fetch;
+
+        private ScheduledFuture<?> task;
+        private int failures;
+
+        Feed(String name, LongSupplier periodMs, Fetch fetch)
+        {
+            this.name = name;
+            this.periodMs = periodMs;
+            this.fetch = fetch;
+        }
+
+        synchronized void schedule(long delayMs)
+        {
+            if (running)
+            {
+                task = executor.schedule(this::run, delayMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        synchronized void cancel()
+        {
+            if (task != null)
+            {
+                task.cancel(false);
+                task = null;
+            }
+        }
+
+        private void run()
+        {
+            if (!running)
+            {
+                return;
+            }
+
+            // autoRefreshMinutes = 0 turns background refresh off for every feed
+            long period = periodMs.getAsLong();
+            if (period <= 0 || config.autoRefreshMinutes() <= 0 || isPaused())
+            {
+                schedule(PAUSED_RECHECK_MS);
+                return;
+            }
+
+            // Only the first callback counts, in case a fetch ever calls back more than once
+            AtomicBoolean done = new AtomicBoolean();
+            try
+            {
+                fetch.fetch(
+                        () -> { if (done.compareAndSet(false, true)) onResult(true, period); },
+                        () -> { if (done.compareAndSet(false, true)) onResult(false, period); });
+            }
+            catch (Exception e)
+            {
+                log.error("Error starting {} refresh", name, e);
+                if (done.compareAndSet(false, true)) onResult(false, period);
+            }
+        }
+
+        private void onResult(boolean success, long period)
+        {
+            long delay;
+            synchronized (this)
+            {
+                if (success)
+                {
+                    failures = 0;
+                    delay = period;
+                }
+                else
+                {
+                    failures++;
+                    delay = Math.min(FIRST_RETRY_MS << Math.min(failures - 1, 10), MAX_RETRY_MS);
+                    log.debug("{} refresh failed {} time(s), retrying in {}s", name, failures, delay / 1000);
+                }
+            }
+            schedule(jitter(delay));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.margeon.shoparbitrage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Downsamples one resolution of price history into bars of a coarser one.
+ *
+ * Each item has one open bucket. Points are folded into it until a point for a
+ * later bucket arrives, at which point the finished bar is handed back and a
+ * new bucket is opened. Bar prices are volume-weighted averages of the points'
+ * average prices (a plain average when nothing traded on that side), and
+ * volumes are summed, which is how the Wiki builds its own coarser averages.
+ * Points older than the open bucket are ignored.
+ */
+final class PriceRollup
+{
+    private final long bucketSeconds;
+    private final int minPoints;
+    private final Map<Integer, Bucket> open = new ConcurrentHashMap<>();
+
+    /**
+     * @param minPoints buckets that saw fewer points than this are dropped instead of becoming a bar
+     */
+    PriceRollup(long bucketSeconds, int minPoints)
+    {
+        this.bucketSeconds = bucketSeconds;
+        this.minPoints = minPoints;
+    }
+
+    /**
+     * Start of the bucket a timestamp falls in
+     */
+    long bucketStart(long timestamp)
+    {
+        return Math.floorDiv(timestamp, bucketSeconds) * bucketSeconds;
+    }
+
+    /**
+     * Fold a point into the item's open bucket.
+     *
+     * @return the bar for the previous bucket if this point closed it, otherwise null
+     */
+    Bar add(int itemId, long timestamp, int avgHigh, int avgLow, long highVol, long lowVol)
+    {
+        long start = bucketStart(timestamp);
+        Bucket bucket = open.computeIfAbsent(itemId, k -> new Bucket());
+        synchronized (bucket)
+        {
+            Bar finished = null;
+            if (bucket.points > 0 && start > bucket.start)
+            {
+                finished = bucket.points >= minPoints ? bucket.toBar() : null;
+                bucket.reset();
+            }
+            else if (bucket.points > 0 && start < bucket.start)
+            {
+                return null; // older than the bucket being built, already rolled up
+            }
+
+            bucket.start = start;
+            bucket.add(avgHigh, avgLow, highVol, lowVol);
+            return finished;
+        }
+    }
+
+    /**
+     * Forget every open bucket
+     */
+    void clear()
+    {
+        open.clear();
+    }
+
+    /**
+     * One finished bar
+     */
+    static final class Bar
+    {
+        final long timestamp;
+        final int high;
+        final int low;
+        final long highVolume;
+        final long lowVolume;
+
+        Bar(long timestamp, int high, int low, long highVolume, long lowVolume)
+        {
+            this.timestamp = timestamp;
+            this.high = high;
+            this.low = low;
+            this.highVolume = highVolume;
+            this.lowVolume = lowVolume;
+        }
+    }
+
+    private static final class Bucket
+    {
+        long start;
+        int points;
+
+        // Volume-weighted sums, plus plain sums for sides with no volume
+        double highValue;
+        double lowValue;
+        long highVolume;
+        long lowVolume;
+        long highSum;
+        long lowSum;
+        int highCount;
+        int lowCount;
+
+        void add(int avgHigh, int avgLow, long highVol, long lowVol)
+        {
+            points++;
+            if (avgHigh > 0)
+            {
+                highValue += (double) avgHigh * highVol;
+                highVolume += highVol;
+                highSum += avgHigh;
+                highCount++;
+            }
+            if (avgLow > 0)
+            {
+                lowValue += (double) avgLow * lowVol;
+                lowVolume += lowVol;
+                lowSum += avgLow;
+                lowCount++;
+            }
+        }
+
+        Bar toBar()
+        {
+            return new Bar(start, average(highValue, highVolume, highSum, highCount),
+                    average(lowValue, lowVolume, lowSum, lowCount), highVolume, lowVolume);
+        }
+
+        private static int average(double value, long volume, long sum, int count)
+        {
+            if (volume > 0) return (int) Math.round(value / volume);
+            return count > 0 ? (int) (sum / count) : 0;
+        }
+
+        void reset()
+        {
+            points = 0;
+            highValue = 0;
+            lowValue = 0;
+            highVolume = 0;
+            lowVolume = 0;
+            highSum = 0;
+            lowSum = 0;
+            highCount = 0;
+            lowCount = 0;
+        }
+    }
+}
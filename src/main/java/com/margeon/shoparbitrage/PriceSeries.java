@@ -0,0 +1,43 @@
+package com.margeon.shoparbitrage;
+
+/**
+ * Fixed-capacity ring buffer of price points for one item at one resolution.
+ *
+ * Appending a point is O(1) and allocates nothing; once the buffer is full
+ * each append overwrites the oldest point. Index 0 is always the oldest point
+ * held, size() - 1 the newest.
+ *
+ * Implementations synchronize appends on the series itself. A reader that
+ * needs a consistent view across several reads (e.g. computing indicators)
+ * should hold the same lock while it reads.
+ */
+public interface PriceSeries
+{
+    /**
+     * Append a point, overwriting the oldest one if the buffer is full
+     */
+    void add(long timestamp, int avgHigh, int avgLow, long highVol, long lowVol);
+
+    /**
+     * Remove every point
+     */
+    void clear();
+
+    int capacity();
+
+    int size();
+
+    boolean isEmpty();
+
+    long timestamp(int index);
+
+    int high(int index);
+
+    int low(int index);
+
+    long highVolume(int index);
+
+    long lowVolume(int index);
+
+    long totalVolume(int index);
+}
@@ -0,0 +1,65 @@
+package com.margeon.shoparbitrage;
+
+/**
+ * Distribution of one item's spread (average high minus average low), as a t-digest.
+ *
+ * Fed with every 5-minute point, so quantiles cover far more history than the
+ * 24 hour buffer holds while using only a few hundred bytes.
+ * Once the digest holds more than {@link #DECAY_WEIGHT} points' worth of
+ * weight, all weights are halved, so older spreads fade out rather than
+ * pinning the distribution.
+ *
+ * Thread-safe.
+ */
+final class PriceSketch
+{
+    private static final double COMPRESSION = 20;
+
+    // About a week of 5-minute points
+    private static final double DECAY_WEIGHT = 2016;
+
+    private final TDigest spread = new TDigest(COMPRESSION);
+
+    /**
+     * Build a sketch from everything currently in a series. Callers hold the series lock.
+     */
+    static PriceSketch of(PriceSeries series)
+    {
+        PriceSketch sketch = new PriceSketch();
+        for (int i = 0; i < series.size(); i++)
+        {
+            sketch.add(series.high(i), series.low(i));
+        }
+        return sketch;
+    }
+
+    /**
+     * Add a point. It only counts when both sides traded (neither price is 0).
+     */
+    synchronized void add(int avgHigh, int avgLow)
+    {
+        if (avgHigh <= 0 || avgLow <= 0) return;
+
+        spread.add(avgHigh - avgLow);
+        if (spread.count() > DECAY_WEIGHT)
+        {
+            spread.scale(0.5);
+        }
+    }
+
+    /**
+     * Weight of the spread distribution, roughly the number of recent points with both sides traded
+     */
+    synchronized double spreadCount()
+    {
+        return spread.count();
+    }
+
+    /**
+     * Estimated spread at quantile q (0 to 1), or NaN if there is none
+     */
+    synchronized double spreadQuantile(double q)
+    {
+        return spread.quantile(q);
+    }
+}
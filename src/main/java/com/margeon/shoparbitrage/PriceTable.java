@@ -0,0 +1,407 @@
+package com.margeon.shoparbitrage;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Column-oriented (structure-of-arrays) store for one set of Wiki prices.
+ *
+ * Every item gets a dense row index; each field lives in its own primitive
+ * array indexed by that row. A full-market scan is then a linear sweep over
+ * a few int/long arrays instead of a walk over boxed map entries, and the
+ * whole table is a handful of objects rather than one per item.
+ *
+ * Tables are immutable once built. Use {@link Builder} to create one.
+ */
+public final class PriceTable
+{
+    static final PriceTable EMPTY = new Builder(0).build();
+
+    // Bytes per row in the serialised form: five int columns and two long columns
+    private static final int ROW_BYTES = 5 * Integer.BYTES + 2 * Long.BYTES;
+
+    // Sanity bound for item IDs from the network or disk (real IDs are well under 100k).
+    // The ID -> row index is a dense array, so an unbounded ID would be an unbounded allocation.
+    static final int MAX_ITEM_ID = 1 << 20;
+
+    private final int size;
+    private final int[] itemIds;
+    private final int[] indexById; // item ID -> row, -1 if the item is not in the table
+
+    private final int[] high;
+    private final int[] low;
+    private final long[] highVolume;
+    private final long[] lowVolume;
+    private final int[] highTime;
+    private final int[] lowTime;
+
+    private PriceTable(Builder builder)
+    {
+        size = builder.size;
+        itemIds = Arrays.copyOf(builder.itemIds, size);
+        high = Arrays.copyOf(builder.high, size);
+        low = Arrays.copyOf(builder.low, size);
+        highVolume = Arrays.copyOf(builder.highVolume, size);
+        lowVolume = Arrays.copyOf(builder.lowVolume, size);
+        highTime = Arrays.copyOf(builder.highTime, size);
+        lowTime = Arrays.copyOf(builder.lowTime, size);
+
+        int maxId = -1;
+        for (int i = 0; i < size; i++)
+        {
+            maxId = Math.max(maxId, itemIds[i]);
+        }
+
+        indexById = new int[maxId + 1];
+        Arrays.fill(indexById, -1);
+        for (int i = 0; i < size; i++)
+        {
+            indexById[itemIds[i]] = i;
+        }
+    }
+
+    /**
+     * Number of items (rows) in the table
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Row index for an item, or -1 if the table has no price for it
+     */
+    public int indexOf(int itemId)
+    {
+        return itemId >= 0 && itemId < indexById.length ? indexById[itemId] : -1;
+    }
+
+    public int itemId(int index)
+    {
+        return itemIds[index];
+    }
+
+    public int high(int index)
+    {
+        return high[index];
+    }
+
+    public int low(int index)
+    {
+        return low[index];
+    }
+
+    public long highVolume(int index)
+    {
+        return highVolume[index];
+    }
+
+    public long lowVolume(int index)
+    {
+        return lowVolume[index];
+    }
+
+    public long dailyVolume(int index)
+    {
+        return highVolume[index] + lowVolume[index];
+    }
+
+    public int highTime(int index)
+    {
+        return highTime[index];
+    }
+
+    public int lowTime(int index)
+    {
+        return lowTime[index];
+    }
+
+    /**
+     * Copy one row out as a {@link WikiPriceService.WikiPrice}
+     */
+    public WikiPriceService.WikiPrice toWikiPrice(int index)
+    {
+        WikiPriceService.WikiPrice price = new WikiPriceService.WikiPrice();
+        price.high = high[index];
+        price.low = low[index];
+        price.highPriceVolume = highVolume[index];
+        price.lowPriceVolume = lowVolume[index];
+        price.highTime = highTime[index];
+        price.lowTime = lowTime[index];
+        return price;
+    }
+
+    /**
+     * Look up an item's price, or null if the table has none
+     */
+    public WikiPriceService.WikiPrice get(int itemId)
+    {
+        int index = indexOf(itemId);
+        return index < 0 ? null : toWikiPrice(index);
+    }
+
+    /**
+     * Merge a /latest style table into this one and return the result.
+     *
+     * An item counts as changed when its highTime or lowTime differs from the
+     * value stored here; only the side that moved takes the new price. Items
+     * that are not in this table yet are appended. Volumes are never touched,
+     * since /latest does not carry them. Each changed item is added to
+     * changes (if not null). Returns this table unchanged if nothing moved.
+     */
+    public PriceTable mergeLatest(PriceTable latest, PriceChangeEvent.Builder changes)
+    {
+        Builder merged = null;
+
+        for (int i = 0; i < latest.size; i++)
+        {
+            int itemId = latest.itemIds[i];
+            int row = indexOf(itemId);
+            boolean highMoved = row < 0 || latest.highTime[i] != highTime[row];
+            boolean lowMoved = row < 0 || latest.lowTime[i] != lowTime[row];
+            if (!highMoved && !lowMoved)
+            {
+                continue;
+            }
+
+            if (merged == null)
+            {
+                merged = new Builder(this);
+            }
+            if (row < 0)
+            {
+                row = merged.add(itemId);
+            }
+            if (highMoved)
+            {
+                merged.high(row, latest.high[i]).highTime(row, latest.highTime[i]);
+            }
+            if (lowMoved)
+            {
+                merged.low(row, latest.low[i]).lowTime(row, latest.lowTime[i]);
+            }
+            if (changes != null)
+            {
+                changes.add(itemId, (highMoved ? PriceChangeEvent.HIGH | PriceChangeEvent.HIGH_TIME : 0)
+                        | (lowMoved ? PriceChangeEvent.LOW | PriceChangeEvent.LOW_TIME : 0));
+            }
+        }
+
+        return merged != null ? merged.build() : this;
+    }
+
+    /**
+     * Add every item whose row differs from the previous table to changes,
+     * with the bits of the fields that moved. Items that appeared or
+     * disappeared count as every field moving.
+     */
+    public void diff(PriceTable previous, PriceChangeEvent.Builder changes)
+    {
+        for (int i = 0; i < size; i++)
+        {
+            int prev = previous.indexOf(itemIds[i]);
+            if (prev < 0)
+            {
+                changes.add(itemIds[i], PriceChangeEvent.ALL_FIELDS);
+                continue;
+            }
+
+            int moved = 0;
+            if (high[i] != previous.high[prev]) moved |= PriceChangeEvent.HIGH;
+            if (low[i] != previous.low[prev]) moved |= PriceChangeEvent.LOW;
+            if (highVolume[i] != previous.highVolume[prev]) moved |= PriceChangeEvent.HIGH_VOLUME;
+            if (lowVolume[i] != previous.lowVolume[prev]) moved |= PriceChangeEvent.LOW_VOLUME;
+            if (highTime[i] != previous.highTime[prev]) moved |= PriceChangeEvent.HIGH_TIME;
+            if (lowTime[i] != previous.lowTime[prev]) moved |= PriceChangeEvent.LOW_TIME;
+            changes.add(itemIds[i], moved);
+        }
+
+        for (int i = 0; i < previous.size; i++)
+        {
+            if (indexOf(previous.itemIds[i]) < 0)
+            {
+                changes.add(previous.itemIds[i], PriceChangeEvent.ALL_FIELDS);
+            }
+        }
+    }
+
+    /**
+     * Write the table column by column: the row count, then each column in full.
+     */
+    public void writeTo(DataOutputStream out) throws IOException
+    {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) out.writeInt(itemIds[i]);
+        for (int i = 0; i < size; i++) out.writeInt(high[i]);
+        for (int i = 0; i < size; i++) out.writeInt(low[i]);
+        for (int i = 0; i < size; i++) out.writeLong(highVolume[i]);
+        for (int i = 0; i < size; i++) out.writeLong(lowVolume[i]);
+        for (int i = 0; i < size; i++) out.writeInt(highTime[i]);
+        for (int i = 0; i < size; i++) out.writeInt(lowTime[i]);
+    }
+
+    /**
+     * Read a table written by {@link #writeTo}, using bulk reads for each column
+     */
+    public static PriceTable readFrom(ByteBuffer in)
+    {
+        int size = in.getInt();
+        if (size < 0 || (long) size * ROW_BYTES > in.remaining())
+        {
+            throw new IllegalArgumentException("Corrupt price table (" + size + " rows)");
+        }
+
+        Builder builder = new Builder(size);
+        builder.size = size;
+        readInts(in, builder.itemIds, size);
+        readInts(in, builder.high, size);
+        readInts(in, builder.low, size);
+        readLongs(in, builder.highVolume, size);
+        readLongs(in, builder.lowVolume, size);
+        readInts(in, builder.highTime, size);
+        readInts(in, builder.lowTime, size);
+
+        for (int i = 0; i < size; i++)
+        {
+            if (builder.itemIds[i] < 0 || builder.itemIds[i] > MAX_ITEM_ID)
+            {
+                throw new IllegalArgumentException("Corrupt price table (item ID " + builder.itemIds[i] + ")");
+            }
+        }
+        return builder.build();
+    }
+
+    private static void readInts(ByteBuffer in, int[] column, int size)
+    {
+        in.asIntBuffer().get(column, 0, size);
+        in.position(in.position() + size * Integer.BYTES);
+    }
+
+    private static void readLongs(ByteBuffer in, long[] column, int size)
+    {
+        in.asLongBuffer().get(column, 0, size);
+        in.position(in.position() + size * Long.BYTES);
+    }
+
+    /**
+     * Appends rows into growable column arrays. Not thread safe; build on one thread, then publish the table.
+     */
+    public static final class Builder
+    {
+        private int size;
+        private int[] itemIds;
+        private int[] high;
+        private int[] low;
+        private long[] highVolume;
+        private long[] lowVolume;
+        private int[] highTime;
+        private int[] lowTime;
+
+        /**
+         * Start from a copy of an existing table's rows
+         */
+        public Builder(PriceTable base)
+        {
+            this(base.size + base.size / 8);
+            size = base.size;
+            System.arraycopy(base.itemIds, 0, itemIds, 0, size);
+            System.arraycopy(base.high, 0, high, 0, size);
+            System.arraycopy(base.low, 0, low, 0, size);
+            System.arraycopy(base.highVolume, 0, highVolume, 0, size);
+            System.arraycopy(base.lowVolume, 0, lowVolume, 0, size);
+            System.arraycopy(base.highTime, 0, highTime, 0, size);
+            System.arraycopy(base.lowTime, 0, lowTime, 0, size);
+        }
+
+        public Builder(int expectedSize)
+        {
+            int capacity = Math.max(expectedSize, 16);
+            itemIds = new int[capacity];
+            high = new int[capacity];
+            low = new int[capacity];
+            highVolume = new long[capacity];
+            lowVolume = new long[capacity];
+            highTime = new int[capacity];
+            lowTime = new int[capacity];
+        }
+
+        /**
+         * Add a new row and return its index. Items with IDs outside 0..MAX_ITEM_ID are ignored (returns -1).
+         */
+        public int add(int itemId)
+        {
+            if (itemId < 0 || itemId > MAX_ITEM_ID)
+            {
+                return -1;
+            }
+
+            if (size == itemIds.length)
+            {
+                int capacity = size * 2;
+                itemIds = Arrays.copyOf(itemIds, capacity);
+                high = Arrays.copyOf(high, capacity);
+                low = Arrays.copyOf(low, capacity);
+                highVolume = Arrays.copyOf(highVolume, capacity);
+                lowVolume = Arrays.copyOf(lowVolume, capacity);
+                highTime = Arrays.copyOf(highTime, capacity);
+                lowTime = Arrays.copyOf(lowTime, capacity);
+            }
+
+            itemIds[size] = itemId;
+            return size++;
+        }
+
+        public Builder high(int index, int value)
+        {
+            high[index] = value;
+            return this;
+        }
+
+        public Builder low(int index, int value)
+        {
+            low[index] = value;
+            return this;
+        }
+
+        public Builder highVolume(int index, long value)
+        {
+            highVolume[index] = value;
+            return this;
+        }
+
+        public Builder lowVolume(int index, long value)
+        {
+            lowVolume[index] = value;
+            return this;
+        }
+
+        public Builder highTime(int index, int value)
+        {
+            highTime[index] = value;
+            return this;
+        }
+
+        public Builder lowTime(int index, int value)
+        {
+            lowTime[index] = value;
+            return this;
+        }
+
+        public int size()
+        {
+            return size;
+        }
+
+        public PriceTable build()
+        {
+            return new PriceTable(this);
+        }
+    }
+}
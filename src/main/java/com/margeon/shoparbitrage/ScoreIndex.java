@@ -0,0 +1,95 @@
+package com.margeon.shoparbitrage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * Latest flip score per item, kept sorted best first.
+ *
+ * Replacing one item's score is a remove and an insert into the sorted set,
+ * O(log n), so a refresh that moved a few hundred items re-sorts only those.
+ * Reading the top scores walks the set from the front and stops at the limit.
+ * Scores must not have their ranking fields changed while they are held.
+ *
+ * Thread-safe.
+ */
+final class ScoreIndex
+{
+    private static final Comparator<FlipScorer.FlipScore> BEST_FIRST =
+            Comparator.comparingDouble((FlipScorer.FlipScore s) -> s.overallScore).reversed()
+                    .thenComparingInt(s -> s.itemId);
+
+    private final Map<Integer, FlipScorer.FlipScore> byItem = new HashMap<>();
+    private final TreeSet<FlipScorer.FlipScore> sorted = new TreeSet<>(BEST_FIRST);
+
+    /**
+     * Set an item's score, replacing any previous one
+     */
+    synchronized void put(FlipScorer.FlipScore score)
+    {
+        FlipScorer.FlipScore previous = byItem.put(score.itemId, score);
+        if (previous != null)
+        {
+            sorted.remove(previous);
+        }
+        sorted.add(score);
+    }
+
+    synchronized void remove(int itemId)
+    {
+        FlipScorer.FlipScore previous = byItem.remove(itemId);
+        if (previous != null)
+        {
+            sorted.remove(previous);
+        }
+    }
+
+    /**
+     * Replace the whole index
+     */
+    synchronized void replaceAll(Collection<FlipScorer.FlipScore> scores)
+    {
+        clear();
+        for (FlipScorer.FlipScore score : scores)
+        {
+            put(score);
+        }
+    }
+
+    synchronized void clear()
+    {
+        byItem.clear();
+        sorted.clear();
+    }
+
+    synchronized int size()
+    {
+        return byItem.size();
+    }
+
+    /**
+     * Up to limit scores that pass the filter, best first
+     */
+    synchronized List<FlipScorer.FlipScore> top(Predicate<FlipScorer.FlipScore> filter, int limit)
+    {
+        List<FlipScorer.FlipScore> result = new ArrayList<>(Math.min(Math.max(limit, 0), sorted.size()));
+        for (FlipScorer.FlipScore score : sorted)
+        {
+            if (result.size() >= limit)
+            {
+                break;
+            }
+            if (filter.test(score))
+            {
+                result.add(score);
+            }
+        }
+        return result;
+    }
+}
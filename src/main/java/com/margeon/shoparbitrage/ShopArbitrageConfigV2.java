@@ -47,6 +47,14 @@ public interface ShopArbitrageConfigV2 extends ShopArbitrageConfig
     )
     String colorSection = "colorSection";
 
+    @ConfigSection(
+            name = "Price Data",
+            description = "How live price data is fetched from the OSRS Wiki",
+            position = 5,
+            closedByDefault = true
+    )
+    String dataSection = "dataSection";
+
     // ====================
     // DISPLAY SETTINGS
     // ====================
@@ -321,6 +329,86 @@ public interface ShopArbitrageConfigV2 extends ShopArbitrageConfig
         return 60;
     }
 
+    // ====================
+    // PRICE DATA
+    // ====================
+
+    @ConfigItem(
+            keyName = "livePricePolling",
+            name = "Live Price Polling",
+            description = "Poll the Wiki /latest endpoint and update only the items that traded<br>" +
+                    "since the last poll, instead of waiting for the next 24h average refresh.",
+            position = 1,
+            section = dataSection
+    )
+    default boolean livePricePolling()
+    {
+        return false;
+    }
+
+    @ConfigItem(
+            keyName = "livePollSeconds",
+            name = "Live Poll Interval (sec)",
+            description = "How often to poll /latest when live price polling is enabled.",
+            position = 2,
+            section = dataSection
+    )
+    @Range(min = 30, max = 600)
+    default int livePollSeconds()
+    {
+        return 60;
+    }
+
+    @ConfigItem(
+            keyName = "showApiMetrics",
+            name = "Show API Stats",
+            description = "Show request, latency, size and parse-time stats for each Wiki API endpoint (debug).",
+            position = 3,
+            section = dataSection
+    )
+    default boolean showApiMetrics()
+    {
+        return false;
+    }
+
+    @ConfigItem(
+            keyName = "offHeapHistory",
+            name = "Off-Heap Price History",
+            description = "Keep 5-min and 1-hour price history in memory-mapped files instead of on the Java heap. Takes effect after a client restart.",
+            position = 4,
+            section = dataSection
+    )
+    default boolean offHeapHistory()
+    {
+        return false;
+    }
+
+    @ConfigItem(
+            keyName = "parallelAnalysis",
+            name = "Parallel Analysis",
+            description = "Score items, and calculate the metrics behind each score, on several threads during a scan. Uses at most half your CPU cores.",
+            position = 5,
+            section = dataSection
+    )
+    default boolean parallelAnalysis()
+    {
+        return true;
+    }
+
+    @ConfigItem(
+            keyName = "backfillItems",
+            name = "History Backfill Items",
+            description = "On startup, fetch 5-min, 1-hour and 6-hour history for this many top items by volume and margin,<br>" +
+                    "so trend and stability scores work straight away. 0 to disable.",
+            position = 6,
+            section = dataSection
+    )
+    @Range(min = 0, max = 500)
+    default int backfillItems()
+    {
+        return 100;
+    }
+
     // ====================
     // SHOP ARBITRAGE SETTINGS
     // ====================
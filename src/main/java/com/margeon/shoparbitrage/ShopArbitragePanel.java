@@ -53,10 +53,15 @@ public class ShopArbitragePanel extends PluginPanel
     private final JButton planRouteButton = new JButton("Plan Route");
 
     // Cached results for re-filtering without API calls
-    private List<ShopResult> cachedResults = new ArrayList<>();
+    private volatile List<ShopResult> cachedResults = new ArrayList<>();
+    private volatile List<ShopData> loadedShops;
     private Map<Integer, Integer> cachedItemPrices = new HashMap<>();
     private Set<String> availableCategories = new TreeSet<>();
 
+    // Recalculates the affected shops whenever live prices move
+    private final PriceChangeListener priceChangeListener = event ->
+            clientThread.invoke(() -> applyPriceChanges(event));
+
     // UI Assets
     private static final ImageIcon REFRESH_ICON;
     private static final ImageIcon REFRESH_HOVER_ICON;
@@ -99,9 +104,18 @@ public class ShopArbitragePanel extends PluginPanel
 
     public void init()
     {
+        wikiPriceService.addPriceChangeListener(priceChangeListener);
         refreshShopData();
     }
 
+    /**
+     * Stop listening for price changes - call when the panel is disposed
+     */
+    public void shutDown()
+    {
+        wikiPriceService.removePriceChangeListener(priceChangeListener);
+    }
+
     private JPanel createHeader()
     {
         JPanel headerContainer = new JPanel();
@@ -353,78 +367,172 @@ public class ShopArbitragePanel extends PluginPanel
                 continue;
             }
 
-            log.debug("Processing shop: {}", shop.getName());
+            ShopResult result = calculateShopResult(shop);
+            if (result != null)
+            {
+                shopsWithProfit++;
+                results.add(result);
+                log.debug("Added {} to results with {} gp/hr", shop.getName(), result.totalProfit);
+            }
+        }
+
+        log.info("Processed {}/{} shops, found {} with profit", shopsProcessed, shops.size(), shopsWithProfit);
 
-            long shopTotalProfit = 0;
-            long shopTripProfit = 0;
-            int profitableItems = 0;
+        loadedShops = shops;
+        cachedResults = results;
+        cachedItemPrices = prefetchItemPrices(results);
 
-            for (ShopItemData item : shop.getItems())
+        SwingUtilities.invokeLater(this::applyFiltersAndSort);
+    }
+
+    /**
+     * Work out one shop's profit from the current Wiki prices, or null if it has nothing profitable
+     */
+    private ShopResult calculateShopResult(ShopData shop)
+    {
+        log.debug("Processing shop: {}", shop.getName());
+
+        long shopTotalProfit = 0;
+        long shopTripProfit = 0;
+        int profitableItems = 0;
+
+        for (ShopItemData item : shop.getItems())
+        {
+            if (item == null) continue;
+
+            try
             {
-                if (item == null) continue;
+                long itemHourly = calculateItemProfit(shop, item);
 
-                try
+                if (itemHourly > 0)
                 {
-                    long itemHourly = calculateItemProfit(shop, item);
+                    profitableItems++;
+                    shopTotalProfit += itemHourly;
+                    log.debug("  {} is profitable: {} gp/hr", item.itemName, itemHourly);
+                }
 
-                    if (itemHourly > 0)
-                    {
-                        profitableItems++;
-                        shopTotalProfit += itemHourly;
-                        log.debug("  {} is profitable: {} gp/hr", item.itemName, itemHourly);
-                    }
+                // Calculate trip profit
+                WikiPriceService.WikiPrice price = wikiPriceService.getPrice(item.itemId);
+                if (price != null && price.high > 0)
+                {
+                    int margin = price.high - item.shopPrice;
+                    int tax = (int) Math.min(Math.floor(price.high * 0.01), 5000000);
+                    int netMargin = margin - tax;
+                    long itemTrip = (long) netMargin * 27;
 
-                    // Calculate trip profit
-                    WikiPriceService.WikiPrice price = wikiPriceService.getPrice(item.itemId);
-                    if (price != null && price.high > 0)
+                    if (itemTrip > 0)
                     {
-                        int margin = price.high - item.shopPrice;
-                        int tax = (int) Math.min(Math.floor(price.high * 0.01), 5000000);
-                        int netMargin = margin - tax;
-                        long itemTrip = (long) netMargin * 27;
-
-                        if (itemTrip > 0)
-                        {
-                            shopTripProfit = Math.max(shopTripProfit, itemTrip);
-                        }
+                        shopTripProfit = Math.max(shopTripProfit, itemTrip);
                     }
                 }
-                catch (Exception e)
-                {
-                    log.error("Error calculating profit for item {} in shop {}",
-                            item.itemName, shop.getName(), e);
-                }
             }
+            catch (Exception e)
+            {
+                log.error("Error calculating profit for item {} in shop {}",
+                        item.itemName, shop.getName(), e);
+            }
+        }
+
+        log.debug("Shop {} - {} profitable items, total profit: {} gp/hr",
+                shop.getName(), profitableItems, shopTotalProfit);
 
-            log.debug("Shop {} - {} profitable items, total profit: {} gp/hr",
-                    shop.getName(), profitableItems, shopTotalProfit);
+        if (shopTotalProfit <= 0)
+        {
+            return null;
+        }
 
-            if (shopTotalProfit > 0)
+        boolean hasStackable = false;
+        for (ShopItemData item : shop.getItems())
+        {
+            if (item != null && itemManager.getItemComposition(item.itemId).isStackable())
             {
-                boolean hasStackable = false;
-                if (shop.getItems() != null)
-                {
-                    for (ShopItemData item : shop.getItems())
-                    {
-                        if (item != null && itemManager.getItemComposition(item.itemId).isStackable())
-                        {
-                            hasStackable = true;
-                            break;
-                        }
-                    }
-                }
+                hasStackable = true;
+                break;
+            }
+        }
 
-                shopsWithProfit++;
-                results.add(new ShopResult(shop, shopTotalProfit, shopTripProfit, hasStackable));
-                log.debug("Added {} to results with {} gp/hr", shop.getName(), shopTotalProfit);
+        return new ShopResult(shop, shopTotalProfit, shopTripProfit, hasStackable);
+    }
+
+    /**
+     * Recompute only the shops that sell an item in the event and swap them into the cached results.
+     * Runs on the client thread.
+     */
+    private void applyPriceChanges(PriceChangeEvent event)
+    {
+        List<ShopData> shops = loadedShops;
+        if (shops == null || shops.isEmpty())
+        {
+            return;
+        }
+
+        Map<ShopData, ShopResult> updated = new HashMap<>();
+        for (ShopData shop : shops)
+        {
+            if (shop == null || shop.getItems() == null || !sellsChangedItem(shop, event))
+            {
+                continue;
+            }
+
+            try
+            {
+                updated.put(shop, calculateShopResult(shop));
+            }
+            catch (Exception e)
+            {
+                log.error("Error recalculating shop {}", shop.getName(), e);
             }
         }
 
-        log.info("Processed {}/{} shops, found {} with profit", shopsProcessed, shops.size(), shopsWithProfit);
+        if (updated.isEmpty())
+        {
+            return;
+        }
 
+        // Keep the load order: replace shops that changed, drop ones no longer profitable, add new ones
+        List<ShopResult> results = new ArrayList<>(cachedResults.size());
+        for (ShopData shop : shops)
+        {
+            ShopResult result = updated.containsKey(shop) ? updated.get(shop) : findCachedResult(shop);
+            if (result != null)
+            {
+                results.add(result);
+            }
+        }
+
+        log.debug("Recalculated {} shops after {} price change", updated.size(), event.getSource());
         cachedResults = results;
+        cachedItemPrices = prefetchItemPrices(results);
+
+        SwingUtilities.invokeLater(this::applyFiltersAndSort);
+    }
+
+    private static boolean sellsChangedItem(ShopData shop, PriceChangeEvent event)
+    {
+        for (ShopItemData item : shop.getItems())
+        {
+            if (item != null && (event.fieldsFor(item.itemId) & PriceChangeEvent.ALL_FIELDS) != 0)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ShopResult findCachedResult(ShopData shop)
+    {
+        for (ShopResult result : cachedResults)
+        {
+            if (result.shop == shop)
+            {
+                return result;
+            }
+        }
+        return null;
+    }
 
-        // Pre-fetch item prices
+    private Map<Integer, Integer> prefetchItemPrices(List<ShopResult> results)
+    {
         Map<Integer, Integer> allItemPrices = new HashMap<>();
         for (ShopResult result : results)
         {
@@ -450,9 +558,7 @@ public class ShopArbitragePanel extends PluginPanel
         }
 
         log.info("Pre-fetched prices for {} items", allItemPrices.size());
-        cachedItemPrices = allItemPrices;
-
-        SwingUtilities.invokeLater(this::applyFiltersAndSort);
+        return allItemPrices;
     }
 
     private String formatCategoryName(String category)
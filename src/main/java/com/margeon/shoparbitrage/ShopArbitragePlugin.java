@@ -6,6 +6,7 @@ import net.runelite.api.events.GrandExchangeOfferChanged;
 import net.runelite.client.callback.ClientThread;
 import net.runelite.client.config.ConfigManager;
 import net.runelite.client.eventbus.Subscribe;
+import net.runelite.client.events.ConfigChanged;
 import net.runelite.client.game.ItemManager;
 import net.runelite.client.plugins.Plugin;
 import net.runelite.client.plugins.PluginDescriptor;
@@ -16,6 +17,7 @@ import net.runelite.client.util.ImageUtil;
 import javax.inject.Inject;
 import javax.swing.*;
 import java.awt.image.BufferedImage;
+import java.util.concurrent.ScheduledExecutorService;
 
 @PluginDescriptor(
         name = "Shop Arbitrage",
@@ -25,6 +27,7 @@ import java.awt.image.BufferedImage;
 public class ShopArbitragePlugin extends Plugin
 {
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(ShopArbitragePlugin.class);
+    private static final long METRICS_LOG_MINUTES = 15;
 
     @Inject
     private Client client;
@@ -53,6 +56,24 @@ public class ShopArbitragePlugin extends Plugin
     @Inject
     private FlippingSessionManager sessionManager;
 
+    @Inject
+    private ScheduledExecutorService executor;
+
+    @Inject
+    private PriceRefreshScheduler refreshScheduler;
+
+    @Inject
+    private WikiApiMetrics apiMetrics;
+
+    @Inject
+    private AnalysisPool analysisPool;
+
+    @Inject
+    private HistoryBackfill historyBackfill;
+
+    @Inject
+    private BuyLimitService buyLimitService;
+
     private LoginPanel loginPanel;
     private MainPanelV2 mainPanel;
     private NavigationButton navButton;
@@ -86,6 +107,13 @@ public class ShopArbitragePlugin extends Plugin
     {
         log.info("Authentication successful - initializing main panel");
         isAuthenticated = true;
+        priceHistoryService.open();
+        updateLatestPolling();
+        refreshScheduler.start();
+        historyBackfill.start();
+        flipScorer.startLiveScores();
+        buyLimitService.refreshIfStale(flipScorer::rescoreAll);
+        apiMetrics.startLogging(executor, METRICS_LOG_MINUTES);
 
         SwingUtilities.invokeLater(() -> {
             // Initialize main panel with prediction services
@@ -96,6 +124,7 @@ public class ShopArbitragePlugin extends Plugin
                     priceHistoryService,
                     flipScorer,
                     sessionManager,
+                    apiMetrics,
                     config
             );
 
@@ -123,11 +152,27 @@ public class ShopArbitragePlugin extends Plugin
     @Override
     protected void shutDown() throws Exception
     {
+        wikiPriceService.stopLatestPolling();
+        refreshScheduler.stop();
+        historyBackfill.stop();
+        flipScorer.stopLiveScores();
+        apiMetrics.stopLogging();
+        analysisPool.shutdown();
+
         // Save price history on shutdown (only if authenticated)
         if (isAuthenticated && priceHistoryService != null)
         {
             priceHistoryService.saveHistory();
         }
+        if (priceHistoryService != null)
+        {
+            priceHistoryService.close();
+        }
+
+        if (mainPanel != null)
+        {
+            mainPanel.shutDown();
+        }
 
         clientToolbar.removeNavigation(navButton);
         loginPanel = null;
@@ -145,6 +190,41 @@ public class ShopArbitragePlugin extends Plugin
         }
     }
 
+    @Subscribe
+    public void onConfigChanged(ConfigChanged event)
+    {
+        if (isAuthenticated && "shoparbitrage".equals(event.getGroup())
+                && ("livePricePolling".equals(event.getKey()) || "livePollSeconds".equals(event.getKey())))
+        {
+            updateLatestPolling();
+        }
+
+        if ("shoparbitrage".equals(event.getGroup()) && "showApiMetrics".equals(event.getKey()))
+        {
+            SwingUtilities.invokeLater(() -> {
+                if (mainPanel != null)
+                {
+                    mainPanel.setApiMetricsVisible(config.showApiMetrics());
+                }
+            });
+        }
+    }
+
+    /**
+     * Start or stop /latest polling to match the config
+     */
+    private void updateLatestPolling()
+    {
+        if (config.livePricePolling())
+        {
+            wikiPriceService.startLatestPolling(executor, config.livePollSeconds());
+        }
+        else
+        {
+            wikiPriceService.stopLatestPolling();
+        }
+    }
+
     @Provides
     ShopArbitrageConfigV2 provideConfig(ConfigManager configManager)
     {
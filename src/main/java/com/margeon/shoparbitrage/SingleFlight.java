@@ -0,0 +1,121 @@
+package com.margeon.shoparbitrage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coalesces concurrent requests for the same key into one in-flight request.
+ *
+ * The first caller to {@link #join} a key starts the request; anyone arriving
+ * while it is still running just attaches a callback. When the request ends,
+ * {@link #complete} runs every attached success callback, {@link #fail} runs
+ * every failure callback (or {@link #abandon} drops them all), and the next
+ * caller starts a fresh request.
+ */
+@Slf4j
+final class SingleFlight<K>
+{
+    private final Map<K, List<Waiter>> pending = new HashMap<>();
+
+    /**
+     * Attach a callback to the request for this key.
+     *
+     * @return true if no request was in flight and the caller must start one
+     */
+    boolean join(K key, Runnable callback)
+    {
+        return join(key, callback, null);
+    }
+
+    /**
+     * Attach success and failure callbacks to the request for this key. Either may be null.
+     *
+     * @return true if no request was in flight and the caller must start one
+     */
+    synchronized boolean join(K key, Runnable onSuccess, Runnable onFailure)
+    {
+        List<Waiter> waiters = pending.get(key);
+        boolean first = waiters == null;
+        if (first)
+        {
+            waiters = new ArrayList<>();
+            pending.put(key, waiters);
+        }
+        if (onSuccess != null || onFailure != null)
+        {
+            waiters.add(new Waiter(onSuccess, onFailure));
+        }
+        return first;
+    }
+
+    /**
+     * Mark the request as finished and run every success callback that joined it
+     */
+    void complete(K key)
+    {
+        finish(key, true);
+    }
+
+    /**
+     * Mark the request as failed and run every failure callback that joined it
+     */
+    void fail(K key)
+    {
+        finish(key, false);
+    }
+
+    /**
+     * Mark the request as finished without running its callbacks
+     */
+    synchronized void abandon(K key)
+    {
+        pending.remove(key);
+    }
+
+    private void finish(K key, boolean success)
+    {
+        List<Waiter> waiters;
+        synchronized (this)
+        {
+            waiters = pending.remove(key);
+        }
+        if (waiters == null)
+        {
+            return;
+        }
+
+        for (Waiter waiter : waiters)
+        {
+            Runnable callback = success ? waiter.onSuccess : waiter.onFailure;
+            if (callback == null)
+            {
+                continue;
+            }
+
+            try
+            {
+                callback.run();
+            }
+            catch (Exception e)
+            {
+                log.error("Error running callback for {}", key, e);
+            }
+        }
+    }
+
+    private static final class Waiter
+    {
+        final Runnable onSuccess;
+        final Runnable onFailure;
+
+        Waiter(Runnable onSuccess, Runnable onFailure)
+        {
+            this.onSuccess = onSuccess;
+            this.onFailure = onFailure;
+        }
+    }
+}
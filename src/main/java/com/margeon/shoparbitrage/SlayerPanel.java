@@ -23,6 +23,7 @@ public class SlayerPanel extends PluginPanel
     private final ClientThread clientThread;
     private final WikiPriceService wikiPriceService;
     private final ShopArbitrageConfig config;
+    private final SlayerProfitCalculator calculator;
 
     private final JPanel listContainer = new JPanel();
     private final JLabel statusLabel = new JLabel("Click refresh to scan");
@@ -38,7 +39,11 @@ public class SlayerPanel extends PluginPanel
     private final JCheckBox slayerTaskOnlyCheckbox = new JCheckBox("Slayer Tasks Only");
 
     // Cached results
-    private List<SlayerMonster> cachedMonsters = new ArrayList<>();
+    private volatile List<SlayerMonster> cachedMonsters = new ArrayList<>();
+
+    // Recalculates monsters whose drops changed price
+    private final PriceChangeListener priceChangeListener = event ->
+            clientThread.invoke(() -> applyPriceChanges(event));
 
     // UI Assets
     private static final ImageIcon REFRESH_ICON;
@@ -67,6 +72,7 @@ public class SlayerPanel extends PluginPanel
         this.clientThread = clientThread;
         this.wikiPriceService = wikiPriceService;
         this.config = config;
+        this.calculator = new SlayerProfitCalculator(wikiPriceService);
 
         setLayout(new BorderLayout());
         setBackground(ColorScheme.DARK_GRAY_COLOR);
@@ -165,7 +171,6 @@ public class SlayerPanel extends PluginPanel
                     List<SlayerMonster> monsters = SlayerDataLoader.loadMonsters();
 
                     // Calculate profits
-                    SlayerProfitCalculator calculator = new SlayerProfitCalculator(wikiPriceService);
                     calculator.calculateAllProfits(monsters);
 
                     // Cache and display
@@ -187,6 +192,29 @@ public class SlayerPanel extends PluginPanel
         });
     }
 
+    private void applyPriceChanges(PriceChangeEvent event)
+    {
+        List<SlayerMonster> monsters = cachedMonsters;
+        if (monsters.isEmpty())
+        {
+            return;
+        }
+
+        try
+        {
+            List<SlayerMonster> changed = calculator.recalculateChanged(monsters, event);
+            if (!changed.isEmpty())
+            {
+                log.debug("Recalculated {} monsters after {} price change", changed.size(), event.getSource());
+                SwingUtilities.invokeLater(this::applyFiltersAndSort);
+            }
+        }
+        catch (Exception e)
+        {
+            log.error("Error recalculating slayer profits", e);
+        }
+    }
+
     private void applyFiltersAndSort()
     {
         if (cachedMonsters.isEmpty())
@@ -335,7 +363,17 @@ public class SlayerPanel extends PluginPanel
 
     public void init()
     {
+        wikiPriceService.addPriceChangeListener(priceChangeListener);
+
         // Auto-refresh on init
         refreshMonsterData();
     }
+
+    /**
+     * Stop listening for price changes - call when the panel is disposed
+     */
+    public void shutDown()
+    {
+        wikiPriceService.removePriceChangeListener(priceChangeListener);
+    }
 }
\ No newline at end of file
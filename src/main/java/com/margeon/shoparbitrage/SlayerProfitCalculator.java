@@ -98,4 +98,27 @@ public class SlayerProfitCalculator
             calculateProfit(monster);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Recalculate only the monsters that drop an item in the event.
+     *
+     * @return the monsters that were recalculated
+     */
+    public java.util.List<SlayerMonster> recalculateChanged(java.util.List<SlayerMonster> monsters, PriceChangeEvent event)
+    {
+        java.util.List<SlayerMonster> changed = new java.util.ArrayList<>();
+        for (SlayerMonster monster : monsters)
+        {
+            for (SlayerMonster.Drop drop : monster.getDropTable())
+            {
+                if ((event.fieldsFor(drop.getItemId()) & PriceChangeEvent.ALL_FIELDS) != 0)
+                {
+                    calculateProfit(monster);
+                    changed.add(monster);
+                    break;
+                }
+            }
+        }
+        return changed;
+    }
+}
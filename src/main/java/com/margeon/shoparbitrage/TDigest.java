@@ -0,0 +1,197 @@
+package com.margeon.shoparbitrage;
+
+import java.util.Arrays;
+
+/**
+ * Merging t-digest: a quantile sketch whose size depends on its compression, not on how many values it has seen.
+ *
+ * Values are buffered and periodically merged into a sorted list of
+ * centroids (mean + weight). The k1 scale function lets centroids near the
+ * middle of the distribution grow large while keeping the tails finely
+ * resolved, so the 10th and 90th percentiles stay accurate with only a few
+ * dozen centroids. Means and weights are floats to keep a digest at a few
+ * hundred bytes.
+ *
+ * Not thread-safe.
+ */
+final class TDigest
+{
+    private static final int BUFFER_SIZE = 16;
+
+    private final double compression;
+
+    private float[] means = new float[0];
+    private float[] weights = new float[0];
+    private int centroids;
+    private double totalWeight;
+
+    private final float[] buffer = new float[BUFFER_SIZE];
+    private int buffered;
+
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param compression roughly the most centroids the digest keeps; higher is more accurate
+     */
+    TDigest(double compression)
+    {
+        if (compression < 10)
+        {
+            throw new IllegalArgumentException("compression must be at least 10: " + compression);
+        }
+        this.compression = compression;
+    }
+
+    void add(double value)
+    {
+        buffer[buffered++] = (float) value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        if (buffered == BUFFER_SIZE)
+        {
+            merge();
+        }
+    }
+
+    /**
+     * Total weight of the values added, after any {@link #scale}
+     */
+    double count()
+    {
+        return totalWeight + buffered;
+    }
+
+    /**
+     * Multiply every weight by factor, so values added afterwards count for relatively more
+     */
+    void scale(double factor)
+    {
+        merge();
+        for (int i = 0; i < centroids; i++)
+        {
+            weights[i] *= factor;
+        }
+        totalWeight *= factor;
+    }
+
+    /**
+     * Estimated value at quantile q (0 to 1), or NaN if nothing has been added
+     */
+    double quantile(double q)
+    {
+        merge();
+        if (centroids == 0)
+        {
+            return Double.NaN;
+        }
+        if (centroids == 1)
+        {
+            return means[0];
+        }
+
+        // Each centroid's weight is centred on its mean; interpolate between neighbouring centres
+        double index = Math.max(0, Math.min(1, q)) * totalWeight;
+        double firstHalf = weights[0] / 2;
+        if (index < firstHalf)
+        {
+            return min + (means[0] - min) * index / firstHalf;
+        }
+
+        double cumulative = firstHalf;
+        for (int i = 0; i < centroids - 1; i++)
+        {
+            double step = (weights[i] + weights[i + 1]) / 2;
+            if (cumulative + step > index)
+            {
+                return means[i] + (means[i + 1] - means[i]) * (index - cumulative) / step;
+            }
+            cumulative += step;
+        }
+
+        double lastHalf = weights[centroids - 1] / 2;
+        double past = Math.min(1, (index - cumulative) / lastHalf);
+        return means[centroids - 1] + (max - means[centroids - 1]) * past;
+    }
+
+    /**
+     * Fold the buffer into the centroids
+     */
+    private void merge()
+    {
+        if (buffered == 0)
+        {
+            return;
+        }
+
+        Arrays.sort(buffer, 0, buffered);
+        double total = totalWeight + buffered;
+
+        float[] mergedMeans = new float[centroids + buffered];
+        float[] mergedWeights = new float[centroids + buffered];
+        int merged = 0;
+
+        // Walk both sorted lists, growing the current centroid while it stays within one unit of k
+        int i = 0;
+        int j = 0;
+        double weightSoFar = 0;
+        double limit = 0;
+        double currentMean = 0;
+        double currentWeight = 0;
+        while (i < centroids || j < buffered)
+        {
+            boolean takeCentroid = j >= buffered || (i < centroids && means[i] <= buffer[j]);
+            double mean = takeCentroid ? means[i] : buffer[j];
+            double weight = takeCentroid ? weights[i++] : 1;
+            j += takeCentroid ? 0 : 1;
+
+            if (currentWeight == 0)
+            {
+                currentMean = mean;
+                currentWeight = weight;
+                limit = total * quantileOf(kOf(0) + 1);
+                continue;
+            }
+
+            if (weightSoFar + currentWeight + weight <= limit)
+            {
+                currentWeight += weight;
+                currentMean += (mean - currentMean) * weight / currentWeight;
+            }
+            else
+            {
+                mergedMeans[merged] = (float) currentMean;
+                mergedWeights[merged] = (float) currentWeight;
+                merged++;
+                weightSoFar += currentWeight;
+                limit = total * quantileOf(kOf(weightSoFar / total) + 1);
+                currentMean = mean;
+                currentWeight = weight;
+            }
+        }
+        mergedMeans[merged] = (float) currentMean;
+        mergedWeights[merged] = (float) currentWeight;
+        merged++;
+
+        means = Arrays.copyOf(mergedMeans, merged);
+        weights = Arrays.copyOf(mergedWeights, merged);
+        centroids = merged;
+        totalWeight = total;
+        buffered = 0;
+    }
+
+    // k1 scale function and its inverse
+    private double kOf(double q)
+    {
+        return compression / (2 * Math.PI) * Math.asin(2 * q - 1);
+    }
+
+    private double quantileOf(double k)
+    {
+        if (k >= compression / 4)
+        {
+            return 1;
+        }
+        return (Math.sin(k * 2 * Math.PI / compression) + 1) / 2;
+    }
+}
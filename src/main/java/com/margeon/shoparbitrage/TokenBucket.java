@@ -0,0 +1,50 @@
+package com.margeon.shoparbitrage;
+
+/**
+ * Token-bucket rate limiter that hands out reservations instead of blocking.
+ *
+ * Up to {@code burst} requests can go out at once; after that tokens come back
+ * at {@code ratePerSecond}. {@link #reserve} always takes a token, possibly
+ * going into debt, and returns how long the caller has to wait before using
+ * it, so callers can schedule the request rather than park a thread.
+ */
+final class TokenBucket
+{
+    private final double burst;
+    private final double tokensPerNano;
+
+    private double tokens;
+    private long refilledAt;
+
+    TokenBucket(int burst, double ratePerSecond)
+    {
+        if (burst <= 0 || ratePerSecond <= 0)
+        {
+            throw new IllegalArgumentException("burst and rate must be positive");
+        }
+
+        this.burst = burst;
+        this.tokensPerNano = ratePerSecond / 1e9;
+        this.tokens = burst;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Take a token.
+     *
+     * @return milliseconds to wait before the token may be used, 0 if it can be used now
+     */
+    synchronized long reserve()
+    {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+
+        tokens -= 1;
+        if (tokens >= 0)
+        {
+            return 0;
+        }
+        return (long) Math.ceil(-tokens / tokensPerNano / 1e6);
+    }
+}
@@ -0,0 +1,83 @@
+package com.margeon.shoparbitrage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the k largest of a stream of values, by a comparator.
+ *
+ * A min-heap of at most k entries: each offer is O(log k) and a value that
+ * can't beat the smallest one kept is rejected after a single comparison, so
+ * selecting the top k of n values costs O(n log k) time and O(k) memory
+ * instead of sorting all n. Not thread-safe; give each thread its own and
+ * {@link #addAll} them together.
+ */
+final class TopK<T>
+{
+    private final int k;
+    private final Comparator<? super T> order;
+    private final PriorityQueue<T> heap;
+
+    /**
+     * @param order ascending order; the values that sort last are kept
+     */
+    TopK(int k, Comparator<? super T> order)
+    {
+        this.k = Math.max(0, k);
+        this.order = order;
+        this.heap = new PriorityQueue<>(Math.max(1, Math.min(this.k, 1024)), order);
+    }
+
+    /**
+     * Offer a value. Returns true if it was kept (for now).
+     */
+    boolean offer(T value)
+    {
+        if (heap.size() < k)
+        {
+            heap.add(value);
+            return true;
+        }
+        if (k == 0 || order.compare(value, heap.peek()) <= 0)
+        {
+            return false;
+        }
+
+        heap.poll();
+        heap.add(value);
+        return true;
+    }
+
+    /**
+     * Offer everything another selector kept
+     */
+    void addAll(TopK<? extends T> other)
+    {
+        for (T value : other.heap)
+        {
+            offer(value);
+        }
+    }
+
+    int size()
+    {
+        return heap.size();
+    }
+
+    /**
+     * The values kept, largest first. Leaves the selector empty.
+     */
+    List<T> drainDescending()
+    {
+        List<T> result = new ArrayList<>(heap.size());
+        while (!heap.isEmpty())
+        {
+            result.add(heap.poll());
+        }
+        Collections.reverse(result);
+        return result;
+    }
+}
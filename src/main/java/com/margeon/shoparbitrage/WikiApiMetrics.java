@@ -0,0 +1,303 @@
+package com.margeon.shoparbitrage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Singleton;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for every call made to the OSRS Wiki price API, kept per endpoint.
+ *
+ * For each endpoint we record requests, failures, a latency histogram (time
+ * until the response headers arrive), bytes read, time spent reading and
+ * parsing the body, and items ingested. That is enough to tell whether a slow
+ * scan is down to the network, parsing or scoring.
+ *
+ * All counters are lock-free and can be updated from any OkHttp thread.
+ */
+@Slf4j
+@Singleton
+public class WikiApiMetrics
+{
+    public static final String DAILY = "24h";
+    public static final String LATEST = "latest";
+    public static final String FIVE_MINUTE = "5m";
+    public static final String ONE_HOUR = "1h";
+    public static final String TIMESERIES = "timeseries";
+    public static final String MAPPING = "mapping";
+
+    // Upper bounds (inclusive) of the latency buckets in ms; anything slower lands in a final overflow bucket
+    private static final long[] LATENCY_BOUNDS_MS = {100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final Map<String, Endpoint> endpoints;
+
+    private volatile ScheduledFuture<?> logTask;
+
+    public WikiApiMetrics()
+    {
+        Map<String, Endpoint> map = new LinkedHashMap<>();
+        for (String name : new String[]{DAILY, LATEST, FIVE_MINUTE, ONE_HOUR, TIMESERIES, MAPPING})
+        {
+            map.put(name, new Endpoint(name));
+        }
+        endpoints = Collections.unmodifiableMap(map);
+    }
+
+    public Endpoint endpoint(String name)
+    {
+        Endpoint endpoint = endpoints.get(name);
+        if (endpoint == null)
+        {
+            throw new IllegalArgumentException("Unknown Wiki endpoint: " + name);
+        }
+        return endpoint;
+    }
+
+    public List<Endpoint> getEndpoints()
+    {
+        return new ArrayList<>(endpoints.values());
+    }
+
+    /**
+     * Log one summary line per endpoint that has seen traffic
+     */
+    public void logSummary()
+    {
+        for (Endpoint endpoint : endpoints.values())
+        {
+            if (endpoint.getRequests() > 0)
+            {
+                log.info("Wiki API {}", endpoint.summary());
+            }
+        }
+    }
+
+    /**
+     * Log a summary every intervalMinutes until {@link #stopLogging} is called
+     */
+    public void startLogging(ScheduledExecutorService executor, long intervalMinutes)
+    {
+        stopLogging();
+        logTask = executor.scheduleAtFixedRate(this::logSummary, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    public void stopLogging()
+    {
+        ScheduledFuture<?> task = logTask;
+        logTask = null;
+        if (task != null)
+        {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Counters for one endpoint
+     */
+    public static final class Endpoint
+    {
+        private final String name;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder responses = new LongAdder();
+        private final LongAdder latencyNanos = new LongAdder();
+        private final AtomicLongArray latencyBuckets = new AtomicLongArray(LATENCY_BOUNDS_MS.length + 1);
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder parses = new LongAdder();
+        private final LongAdder parseNanos = new LongAdder();
+        private final LongAdder items = new LongAdder();
+
+        private Endpoint(String name)
+        {
+            this.name = name;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * Count a request and return its start time, to pass to {@link #responded}
+         */
+        public long start()
+        {
+            requests.increment();
+            return System.nanoTime();
+        }
+
+        /**
+         * Record the time from {@link #start} until the response headers arrived
+         */
+        public void responded(long startNanos)
+        {
+            long elapsed = System.nanoTime() - startNanos;
+            responses.increment();
+            latencyNanos.add(elapsed);
+
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(elapsed);
+            int bucket = 0;
+            while (bucket < LATENCY_BOUNDS_MS.length && elapsedMs > LATENCY_BOUNDS_MS[bucket])
+            {
+                bucket++;
+            }
+            latencyBuckets.incrementAndGet(bucket);
+        }
+
+        /**
+         * Count a failed request: connection errors, error status codes and unparseable bodies
+         */
+        public void failed()
+        {
+            failures.increment();
+        }
+
+        /**
+         * Wrap a response body stream so every byte read through it is counted
+         */
+        public InputStream count(InputStream in)
+        {
+            return new FilterInputStream(in)
+            {
+                @Override
+                public int read() throws IOException
+                {
+                    int b = super.read();
+                    if (b >= 0)
+                    {
+                        bytes.increment();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException
+                {
+                    int n = super.read(buffer, offset, length);
+                    if (n > 0)
+                    {
+                        bytes.add(n);
+                    }
+                    return n;
+                }
+            };
+        }
+
+        /**
+         * Record a parsed body: the time since parseStartNanos and the number of items it held
+         */
+        public void parsed(long parseStartNanos, int itemCount)
+        {
+            parses.increment();
+            parseNanos.add(System.nanoTime() - parseStartNanos);
+            items.add(itemCount);
+        }
+
+        public long getRequests()
+        {
+            return requests.sum();
+        }
+
+        public long getFailures()
+        {
+            return failures.sum();
+        }
+
+        public long getBytes()
+        {
+            return bytes.sum();
+        }
+
+        public long getItems()
+        {
+            return items.sum();
+        }
+
+        public double getMeanLatencyMs()
+        {
+            long count = responses.sum();
+            return count == 0 ? 0 : latencyNanos.sum() / 1e6 / count;
+        }
+
+        public double getMeanParseMs()
+        {
+            long count = parses.sum();
+            return count == 0 ? 0 : parseNanos.sum() / 1e6 / count;
+        }
+
+        /**
+         * Approximate latency percentile (0-1): the upper bound of the bucket it falls in,
+         * or -1 if it is in the overflow bucket
+         */
+        public long getLatencyPercentileMs(double percentile)
+        {
+            long total = 0;
+            for (int i = 0; i < latencyBuckets.length(); i++)
+            {
+                total += latencyBuckets.get(i);
+            }
+            if (total == 0)
+            {
+                return 0;
+            }
+
+            long target = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for (int i = 0; i < LATENCY_BOUNDS_MS.length; i++)
+            {
+                seen += latencyBuckets.get(i);
+                if (seen >= target)
+                {
+                    return LATENCY_BOUNDS_MS[i];
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Latency histogram as "<=100ms:3 <=250ms:10 ... >10000ms:0"
+         */
+        public String histogram()
+        {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < latencyBuckets.length(); i++)
+            {
+                if (i > 0)
+                {
+                    sb.append(' ');
+                }
+                if (i < LATENCY_BOUNDS_MS.length)
+                {
+                    sb.append("<=").append(LATENCY_BOUNDS_MS[i]);
+                }
+                else
+                {
+                    sb.append('>').append(LATENCY_BOUNDS_MS[LATENCY_BOUNDS_MS.length - 1]);
+                }
+                sb.append("ms:").append(latencyBuckets.get(i));
+            }
+            return sb.toString();
+        }
+
+        public String summary()
+        {
+            long p95 = getLatencyPercentileMs(0.95);
+            return String.format("%s: %d requests, %d failed, latency avg %.0fms p95 %s, %d KB, parse avg %.1fms, %d items [%s]",
+                    name, getRequests(), getFailures(), getMeanLatencyMs(),
+                    p95 < 0 ? ">" + LATENCY_BOUNDS_MS[LATENCY_BOUNDS_MS.length - 1] + "ms" : "<=" + p95 + "ms",
+                    getBytes() / 1024, getMeanParseMs(), getItems(), histogram());
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.margeon.shoparbitrage;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Streaming decoder for the Wiki's averaged price responses, shared by /5m, /1h and /timeseries.
+ *
+ * Both shapes are read token by token into primitive columns, with no
+ * intermediate JSON tree and one lookup per field:
+ * <pre>
+ *   /5m, /1h      {"data": {"&lt;itemId&gt;": {"avgHighPrice": .., ...}, ...}, "timestamp": ..}
+ *   /timeseries   {"data": [{"timestamp": .., "avgHighPrice": .., ...}, ...], "itemId": ..}
+ * </pre>
+ * The feed timestamp can come after the data, so rows are buffered and get
+ * their timestamp once the whole object has been read. Nulls (nothing traded
+ * on that side) decode as 0.
+ */
+final class WikiFeedDecoder
+{
+    private WikiFeedDecoder()
+    {
+    }
+
+    /**
+     * Decode a response. Returns null if it has no data.
+     *
+     * @param fallbackTimestamp timestamp for feed rows if the response doesn't carry one
+     */
+    static Points read(JsonReader reader, long fallbackTimestamp) throws IOException
+    {
+        Points points = null;
+        long feedTimestamp = -1;
+
+        reader.beginObject();
+        while (reader.hasNext())
+        {
+            switch (reader.nextName())
+            {
+                case "data":
+                    if (reader.peek() == JsonToken.BEGIN_OBJECT)
+                    {
+                        points = new Points(4096);
+                        readItems(reader, points);
+                    }
+                    else if (reader.peek() == JsonToken.BEGIN_ARRAY)
+                    {
+                        points = new Points(512);
+                        readSeries(reader, points);
+                    }
+                    else
+                    {
+                        reader.skipValue();
+                    }
+                    break;
+                case "timestamp":
+                    feedTimestamp = nextLongOrZero(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (points != null && points.feed)
+        {
+            Arrays.fill(points.timestamps, 0, points.size, feedTimestamp > 0 ? feedTimestamp : fallbackTimestamp);
+        }
+        return points;
+    }
+
+    // {"<itemId>": {...}, ...}
+    private static void readItems(JsonReader reader, Points points) throws IOException
+    {
+        points.feed = true;
+        reader.beginObject();
+        while (reader.hasNext())
+        {
+            int itemId;
+            try
+            {
+                itemId = Integer.parseInt(reader.nextName());
+            }
+            catch (NumberFormatException e)
+            {
+                reader.skipValue();
+                continue;
+            }
+            readPoint(reader, points, itemId);
+        }
+        reader.endObject();
+    }
+
+    // [{"timestamp": .., ...}, ...]
+    private static void readSeries(JsonReader reader, Points points) throws IOException
+    {
+        reader.beginArray();
+        while (reader.hasNext())
+        {
+            readPoint(reader, points, -1);
+        }
+        reader.endArray();
+    }
+
+    private static void readPoint(JsonReader reader, Points points, int itemId) throws IOException
+    {
+        int row = points.addRow(itemId);
+        reader.beginObject();
+        while (reader.hasNext())
+        {
+            switch (reader.nextName())
+            {
+                case "timestamp":
+                    points.timestamps[row] = nextLongOrZero(reader);
+                    break;
+                case "avgHighPrice":
+                    points.high[row] = (int) nextLongOrZero(reader);
+                    break;
+                case "avgLowPrice":
+                    points.low[row] = (int) nextLongOrZero(reader);
+                    break;
+                case "highPriceVolume":
+                    points.highVolume[row] = nextLongOrZero(reader);
+                    break;
+                case "lowPriceVolume":
+                    points.lowVolume[row] = nextLongOrZero(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static long nextLongOrZero(JsonReader reader) throws IOException
+    {
+        if (reader.peek() == JsonToken.NULL)
+        {
+            reader.nextNull();
+            return 0;
+        }
+        return reader.nextLong();
+    }
+
+    /**
+     * Decoded rows, one column per field. Item IDs are -1 for timeseries rows.
+     */
+    static final class Points
+    {
+        private boolean feed;
+        private int size;
+        private int[] itemIds;
+        private long[] timestamps;
+        private int[] high;
+        private int[] low;
+        private long[] highVolume;
+        private long[] lowVolume;
+
+        private Points(int capacity)
+        {
+            itemIds = new int[capacity];
+            timestamps = new long[capacity];
+            high = new int[capacity];
+            low = new int[capacity];
+            highVolume = new long[capacity];
+            lowVolume = new long[capacity];
+        }
+
+        private int addRow(int itemId)
+        {
+            if (size == itemIds.length)
+            {
+                int capacity = size * 2;
+                itemIds = Arrays.copyOf(itemIds, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                high = Arrays.copyOf(high, capacity);
+                low = Arrays.copyOf(low, capacity);
+                highVolume = Arrays.copyOf(highVolume, capacity);
+                lowVolume = Arrays.copyOf(lowVolume, capacity);
+            }
+            itemIds[size] = itemId;
+            return size++;
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        int itemId(int row)
+        {
+            return itemIds[row];
+        }
+
+        long timestamp(int row)
+        {
+            return timestamps[row];
+        }
+
+        int high(int row)
+        {
+            return high[row];
+        }
+
+        int low(int row)
+        {
+            return low[row];
+        }
+
+        long highVolume(int row)
+        {
+            return highVolume[row];
+        }
+
+        long lowVolume(int row)
+        {
+            return lowVolume[row];
+        }
+    }
+}
@@ -1,18 +1,30 @@
 package com.margeon.shoparbitrage;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import com.google.gson.reflect.TypeToken;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
 import okhttp3.*;
 
 import javax.inject.Inject; // ENSURE THIS IS IMPORTED
 import javax.inject.Singleton;
-import java.io.IOException;
-import java.lang.reflect.Type;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 @Singleton
@@ -20,93 +32,555 @@ public class WikiPriceService
 {
     private final OkHttpClient okHttpClient;
     private final Gson gson;
+    private final WikiApiMetrics apiMetrics;
 
-    private final Map<Integer, WikiPrice> priceCache = new HashMap<>();
-    private long lastFetchTime = 0;
+    // Readers never lock: each refresh publishes a new immutable snapshot through this single reference
+    private volatile PriceSnapshot snapshot = PriceSnapshot.EMPTY;
+    private final AtomicLong snapshotVersion = new AtomicLong();
+
+    // Writers (24h refresh and /latest merges) take this lock so neither overwrites the other's snapshot
+    private final Object publishLock = new Object();
     private static final long CACHE_DURATION_MS = 60 * 1000;
 
+    // The /24h feed covers roughly 4,000 tradeable items; size the table up front so it never grows
+    private static final int EXPECTED_ITEM_COUNT = 4096;
+
+    // Last snapshot, kept on disk so the panels have prices the moment the plugin starts
+    private static final File PRICE_CACHE_FILE = new File(RuneLite.RUNELITE_DIR, "wiki-prices-24h.bin");
+    private static final int PRICE_CACHE_MAGIC = 0x57505243; // "WPRC"
+    private static final int PRICE_CACHE_FORMAT = 1;
+    private static final long MAX_WARM_START_AGE_MS = TimeUnit.HOURS.toMillis(24);
+
+    // Callers that ask for prices while a download is already running wait on that download
+    private static final String FEED_24H = "24h";
+    private static final String FEED_LATEST = "latest";
+    private final SingleFlight<String> inFlight = new SingleFlight<>();
+
+    // Validators from the last 200 response, sent back so an unchanged feed costs a 304 instead of a full download
+    private volatile String etag;
+    private volatile String lastModified;
+
+    private final List<PriceChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    // Set while /latest polling is running; live prices then take priority over the 24h averages
+    private volatile ScheduledFuture<?> latestPollTask;
+
     // --- FIX: ADDED @Inject HERE ---
     @Inject
-    public WikiPriceService(OkHttpClient okHttpClient, Gson gson)
+    public WikiPriceService(OkHttpClient okHttpClient, Gson gson, WikiApiMetrics apiMetrics)
     {
         this.okHttpClient = okHttpClient;
         this.gson = gson;
+        this.apiMetrics = apiMetrics;
+        loadCachedPrices();
     }
 
+    /**
+     * Fetch the /24h price feed, or reuse the cached snapshot if it is less than a minute old.
+     * Straight after startup the prices saved by the previous session are passed to onSuccess
+     * immediately, and onSuccess runs again once fresher prices have been downloaded.
+     */
     public void fetchLivePrices(Runnable onSuccess)
+    {
+        fetchLivePrices(onSuccess, null);
+    }
+
+    /**
+     * Same as {@link #fetchLivePrices(Runnable)}, but also runs onFailure if the download fails
+     */
+    public void fetchLivePrices(Runnable onSuccess, Runnable onFailure)
+    {
+        fetchLivePrices(onSuccess, onFailure, true);
+    }
+
+    /**
+     * Fetch the /24h price feed for a background refresh. Unlike {@link #fetchLivePrices(Runnable, Runnable)}
+     * the prices restored from disk are never passed to onSuccess, so the callbacks report only
+     * how the request went (an unchanged feed counts as success).
+     */
+    public void refreshLivePrices(Runnable onSuccess, Runnable onFailure)
+    {
+        fetchLivePrices(onSuccess, onFailure, false);
+    }
+
+    private void fetchLivePrices(Runnable onSuccess, Runnable onFailure, boolean showRestored)
     {
         long now = System.currentTimeMillis();
+        PriceSnapshot current = snapshot;
 
-        if (now - lastFetchTime < CACHE_DURATION_MS && !priceCache.isEmpty()) {
-            log.debug("Using cached Wiki prices (Data is {}s old)", (now - lastFetchTime) / 1000);
+        if (now - current.fetchedAt < CACHE_DURATION_MS && !current.table.isEmpty()) {
+            log.debug("Using cached Wiki prices (Data is {}s old)", (now - current.fetchedAt) / 1000);
             if (onSuccess != null) onSuccess.run();
             return;
         }
 
-        Request request = new Request.Builder()
+        // Prices restored from disk are shown straight away; the request below then revalidates them in the
+        // background and calls back a second time only if the feed actually changed
+        Runnable callback = onSuccess;
+        if (showRestored && current.restored && !current.table.isEmpty() && onSuccess != null) {
+            log.debug("Showing Wiki prices from disk ({}s old) while revalidating", (now - current.fetchedAt) / 1000);
+            onSuccess.run();
+
+            final long warmVersion = current.version;
+            callback = () -> {
+                if (snapshot.version != warmVersion) onSuccess.run();
+            };
+        }
+
+        // Several panels ask for prices at once on startup; only the first caller starts a download
+        if (!inFlight.join(FEED_24H, callback, onFailure)) {
+            log.debug("Joining in-flight 24h price fetch");
+            return;
+        }
+
+        Request.Builder requestBuilder = new Request.Builder()
                 .url("https://prices.runescape.wiki/api/v1/osrs/24h")
-                .header("User-Agent", "ShopArbitragePlugin - Discord: philly_9859")
-                .build();
+                .header("User-Agent", "ShopArbitragePlugin - Discord: philly_9859");
+        if (!current.table.isEmpty()) {
+            if (etag != null) requestBuilder.header("If-None-Match", etag);
+            if (lastModified != null) requestBuilder.header("If-Modified-Since", lastModified);
+        }
+        Request request = requestBuilder.build();
 
         log.debug("Fetching 24h prices (with volume) from Wiki API...");
 
+        final WikiApiMetrics.Endpoint metrics = apiMetrics.endpoint(WikiApiMetrics.DAILY);
+        final long started = metrics.start();
         okHttpClient.newCall(request).enqueue(new Callback()
         {
             @Override
             public void onFailure(Call call, IOException e)
             {
                 log.warn("Wiki API connection failed: {}", e.getMessage());
+                metrics.failed();
+                inFlight.fail(FEED_24H);
             }
 
             @Override
             public void onResponse(Call call, Response response) throws IOException
             {
-                if (!response.isSuccessful()) {
-                    log.warn("Wiki API returned error: {}", response.code());
-                    response.close();
-                    return;
-                }
+                boolean updated = false;
+                metrics.responded(started);
 
                 try {
-                    String responseBody = response.body().string();
-                    JsonObject json = gson.fromJson(responseBody, JsonObject.class);
-
-                    if (json.has("data")) {
-                        JsonObject data = json.getAsJsonObject("data");
-                        Type type = new TypeToken<Map<String, WikiPrice>>(){}.getType();
-                        Map<String, WikiPrice> parsedData = gson.fromJson(data, type);
-
-                        synchronized (priceCache) {
-                            priceCache.clear();
-                            for (Map.Entry<String, WikiPrice> entry : parsedData.entrySet()) {
-                                try {
-                                    priceCache.put(Integer.parseInt(entry.getKey()), entry.getValue());
-                                } catch (NumberFormatException ignored) {}
+                    if (response.code() == 304) {
+                        synchronized (publishLock) {
+                            PriceSnapshot unchanged = snapshot;
+                            snapshot = new PriceSnapshot(unchanged.version, System.currentTimeMillis(),
+                                    unchanged.table, false);
+                        }
+                        log.debug("Wiki prices not modified since last fetch");
+                        updated = true;
+                        return;
+                    }
+
+                    if (!response.isSuccessful()) {
+                        log.warn("Wiki API returned error: {}", response.code());
+                        metrics.failed();
+                        return;
+                    }
+
+                    long parseStart = System.nanoTime();
+                    try (JsonReader reader = openCounted(response, metrics)) {
+                        // Stream each item straight into the new price table instead of building a String,
+                        // a JsonObject tree and an intermediate Map<String, WikiPrice> first
+                        PriceTable parsedData = readPriceFeed(reader);
+
+                        if (parsedData != null) {
+                            metrics.parsed(parseStart, parsedData.size());
+                            etag = response.header("ETag");
+                            lastModified = response.header("Last-Modified");
+                            PriceChangeEvent.Builder changes = new PriceChangeEvent.Builder(PriceChangeEvent.Source.DAILY);
+                            PriceSnapshot published;
+                            synchronized (publishLock) {
+                                PriceTable previous = snapshot.table;
+                                if (latestPollTask != null) {
+                                    // Keep the instant prices polled from /latest; take only the new volumes
+                                    parsedData = parsedData.mergeLatest(previous, null);
+                                }
+                                parsedData.diff(previous, changes);
+                                published = new PriceSnapshot(snapshotVersion.incrementAndGet(),
+                                        System.currentTimeMillis(), parsedData, false);
+                                snapshot = published;
                             }
+                            log.debug("Parsed {} Wiki prices (snapshot v{})", parsedData.size(), published.version);
+                            saveCachedPrices(published);
+                            updated = true;
+                            publishChanges(changes.build(published.version));
+                        } else {
+                            metrics.failed();
+                        }
+                    } catch (Exception e) {
+                        log.error("Error parsing Wiki API data", e);
+                        metrics.failed();
+                    }
+                } finally {
+                    response.close();
+                    if (updated) {
+                        inFlight.complete(FEED_24H);
+                    } else {
+                        inFlight.fail(FEED_24H);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Start polling /latest at a short interval. Each poll updates only the
+     * items whose highTime or lowTime moved, and publishes a
+     * {@link PriceChangeEvent.Source#LATEST} event listing them.
+     */
+    public void startLatestPolling(ScheduledExecutorService executor, long intervalSeconds)
+    {
+        stopLatestPolling();
+        log.debug("Polling Wiki /latest prices every {}s", intervalSeconds);
+        latestPollTask = executor.scheduleWithFixedDelay(this::fetchLatestPrices,
+                0, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void stopLatestPolling()
+    {
+        ScheduledFuture<?> task = latestPollTask;
+        latestPollTask = null;
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Fetch /latest once and merge the items that traded since the last poll into the current snapshot
+     */
+    public void fetchLatestPrices()
+    {
+        if (!inFlight.join(FEED_LATEST, null)) {
+            log.debug("Skipping /latest poll, previous poll still running");
+            return;
+        }
+
+        Request request = new Request.Builder()
+                .url("https://prices.runescape.wiki/api/v1/osrs/latest")
+                .header("User-Agent", "ShopArbitragePlugin - Discord: philly_9859")
+                .build();
+
+        final WikiApiMetrics.Endpoint metrics = apiMetrics.endpoint(WikiApiMetrics.LATEST);
+        final long started = metrics.start();
+        okHttpClient.newCall(request).enqueue(new Callback()
+        {
+            @Override
+            public void onFailure(Call call, IOException e)
+            {
+                log.warn("Wiki /latest connection failed: {}", e.getMessage());
+                metrics.failed();
+                inFlight.abandon(FEED_LATEST);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException
+            {
+                PriceChangeEvent changed = null;
+                metrics.responded(started);
+
+                long parseStart = System.nanoTime();
+                try (JsonReader reader = openCounted(response, metrics)) {
+                    if (!response.isSuccessful()) {
+                        log.warn("Wiki /latest returned error: {}", response.code());
+                        metrics.failed();
+                        return;
+                    }
+
+                    PriceTable latest = readPriceFeed(reader);
+                    if (latest == null) {
+                        metrics.failed();
+                        return;
+                    }
+                    metrics.parsed(parseStart, latest.size());
+
+                    PriceChangeEvent.Builder changes = new PriceChangeEvent.Builder(PriceChangeEvent.Source.LATEST);
+                    synchronized (publishLock) {
+                        PriceSnapshot current = snapshot;
+                        PriceTable merged = current.table.mergeLatest(latest, changes);
+                        if (merged != current.table) {
+                            snapshot = new PriceSnapshot(snapshotVersion.incrementAndGet(),
+                                    current.fetchedAt, merged, current.restored);
                         }
-                        lastFetchTime = System.currentTimeMillis();
-                        if (onSuccess != null) onSuccess.run();
+                        changed = changes.build(snapshot.version);
                     }
+
+                    log.debug("Merged /latest: {} of {} items changed", changed.size(), latest.size());
                 } catch (Exception e) {
-                    log.error("Error parsing Wiki API data", e);
+                    log.error("Error parsing Wiki /latest data", e);
+                    metrics.failed();
                 } finally {
                     response.close();
+                    inFlight.abandon(FEED_LATEST);
+                }
+
+                if (changed != null) {
+                    publishChanges(changed);
                 }
             }
         });
     }
 
-    public WikiPrice getPrice(int itemId)
+    /**
+     * Register a listener for price changes. Listeners are called on the HTTP thread after each refresh.
+     */
+    public void addPriceChangeListener(PriceChangeListener listener)
     {
-        synchronized (priceCache) {
-            return priceCache.get(itemId);
+        if (listener != null && !changeListeners.contains(listener)) {
+            changeListeners.add(listener);
         }
     }
 
+    public void removePriceChangeListener(PriceChangeListener listener)
+    {
+        changeListeners.remove(listener);
+    }
+
+    private void publishChanges(PriceChangeEvent event)
+    {
+        if (event.isEmpty()) return;
+
+        log.debug("Publishing {}", event);
+        for (PriceChangeListener listener : changeListeners) {
+            try {
+                listener.onPriceChange(event);
+            } catch (Exception e) {
+                log.error("Error notifying price change listener", e);
+            }
+        }
+    }
+
+    /**
+     * Load the last saved snapshot so the panels can show prices before the first fetch completes
+     */
+    private void loadCachedPrices()
+    {
+        if (!PRICE_CACHE_FILE.exists()) return;
+
+        try (FileChannel channel = FileChannel.open(PRICE_CACHE_FILE.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) break;
+            }
+            buffer.flip();
+
+            if (buffer.getInt() != PRICE_CACHE_MAGIC || buffer.getInt() != PRICE_CACHE_FORMAT) {
+                log.debug("Ignoring Wiki price cache with unknown format");
+                return;
+            }
+
+            long fetchedAt = buffer.getLong();
+            if (System.currentTimeMillis() - fetchedAt > MAX_WARM_START_AGE_MS) {
+                log.debug("Ignoring Wiki price cache older than 24 hours");
+                return;
+            }
+
+            String cachedEtag = readString(buffer);
+            String cachedLastModified = readString(buffer);
+            PriceTable table = PriceTable.readFrom(buffer);
+
+            etag = cachedEtag;
+            lastModified = cachedLastModified;
+            snapshot = new PriceSnapshot(snapshotVersion.incrementAndGet(), fetchedAt, table, true);
+            log.info("Loaded {} cached Wiki prices ({}s old)", table.size(),
+                    (System.currentTimeMillis() - fetchedAt) / 1000);
+        } catch (Exception e) {
+            log.warn("Failed to load Wiki price cache: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Write a snapshot to disk. Goes through a temp file and a rename so a crash mid-write never leaves a torn cache.
+     */
+    private void saveCachedPrices(PriceSnapshot toSave)
+    {
+        File tempFile = new File(PRICE_CACHE_FILE.getPath() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(PRICE_CACHE_MAGIC);
+            out.writeInt(PRICE_CACHE_FORMAT);
+            out.writeLong(toSave.fetchedAt);
+            writeString(out, etag);
+            writeString(out, lastModified);
+            toSave.table.writeTo(out);
+        } catch (IOException e) {
+            log.warn("Failed to save Wiki price cache: {}", e.getMessage());
+            return;
+        }
+
+        try {
+            Files.move(tempFile.toPath(), PRICE_CACHE_FILE.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to replace Wiki price cache: {}", e.getMessage());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a string written by {@link #writeString}; an empty string comes back as null
+     */
+    private static String readString(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return bytes.length == 0 ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Open a JSON reader over the response body that counts the bytes read into the endpoint's metrics
+     */
+    private JsonReader openCounted(Response response, WikiApiMetrics.Endpoint metrics)
+    {
+        return gson.newJsonReader(new InputStreamReader(
+                metrics.count(response.body().byteStream()), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a {"data": {"<itemId>": {...}}, ...} price feed token by token.
+     * Returns null if the response has no data object.
+     */
+    private static PriceTable readPriceFeed(JsonReader reader) throws IOException
+    {
+        PriceTable.Builder prices = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"data".equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
+
+            prices = new PriceTable.Builder(EXPECTED_ITEM_COUNT);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                int itemId;
+                try {
+                    itemId = Integer.parseInt(reader.nextName());
+                } catch (NumberFormatException e) {
+                    itemId = -1;
+                }
+
+                int row = prices.add(itemId);
+                if (row < 0) {
+                    reader.skipValue();
+                    continue;
+                }
+                readPrice(reader, prices, row);
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+
+        return prices != null ? prices.build() : null;
+    }
+
+    private static void readPrice(JsonReader reader, PriceTable.Builder prices, int row) throws IOException
+    {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "high":
+                case "avgHighPrice":
+                    prices.high(row, (int) nextLongOrZero(reader));
+                    break;
+                case "low":
+                case "avgLowPrice":
+                    prices.low(row, (int) nextLongOrZero(reader));
+                    break;
+                case "highPriceVolume":
+                    prices.highVolume(row, nextLongOrZero(reader));
+                    break;
+                case "lowPriceVolume":
+                    prices.lowVolume(row, nextLongOrZero(reader));
+                    break;
+                case "highTime":
+                    prices.highTime(row, (int) nextLongOrZero(reader));
+                    break;
+                case "lowTime":
+                    prices.lowTime(row, (int) nextLongOrZero(reader));
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * The Wiki API sends null for items that did not trade in the window; treat those as 0 like Gson did.
+     */
+    private static long nextLongOrZero(JsonReader reader) throws IOException
+    {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return 0;
+        }
+        return reader.nextLong();
+    }
+
+    public WikiPrice getPrice(int itemId)
+    {
+        return snapshot.table.get(itemId);
+    }
+
+    /**
+     * Copies the current snapshot into a map. Full-market scans should sweep
+     * {@code getSnapshot().table} instead, which avoids the copy entirely.
+     */
     public Map<Integer, WikiPrice> getAllPrices()
     {
-        synchronized (priceCache) {
-            return new HashMap<>(priceCache);
+        PriceTable table = snapshot.table;
+        Map<Integer, WikiPrice> prices = new HashMap<>(table.size() * 4 / 3 + 1);
+        for (int i = 0; i < table.size(); i++) {
+            prices.put(table.itemId(i), table.toWikiPrice(i));
+        }
+        return prices;
+    }
+
+    /**
+     * The current price snapshot. Hold on to the returned object to read
+     * a consistent set of prices across many lookups.
+     */
+    public PriceSnapshot getSnapshot()
+    {
+        return snapshot;
+    }
+
+    /**
+     * Immutable set of prices from a single fetch. The version goes up by
+     * one every time a new snapshot is published (0 = nothing fetched yet).
+     */
+    public static final class PriceSnapshot
+    {
+        static final PriceSnapshot EMPTY = new PriceSnapshot(0, 0, PriceTable.EMPTY, false);
+
+        public final long version;
+        public final long fetchedAt;
+        public final PriceTable table;
+
+        // True while the prices are the ones restored from disk at startup and have not been revalidated yet
+        public final boolean restored;
+
+        PriceSnapshot(long version, long fetchedAt, PriceTable table, boolean restored)
+        {
+            this.version = version;
+            this.fetchedAt = fetchedAt;
+            this.table = table;
+            this.restored = restored;
+        }
+
+        public WikiPrice get(int itemId)
+        {
+            return table.get(itemId);
         }
     }
 
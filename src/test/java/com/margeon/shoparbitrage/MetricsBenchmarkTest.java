@@ -0,0 +1,144 @@
+package com.margeon.shoparbitrage;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Rough benchmark of the per-item metrics work (indicators plus price sketch) on a
+ * synthetic market of 4,000 items with a day of 5m points each, run on one thread
+ * and then split across the {@link AnalysisPool}. Prints the timings and the speedup.
+ */
+public class MetricsBenchmarkTest
+{
+    private static final int ITEMS = 4000;
+    private static final int POINTS = 288;
+    private static final long FIVE_MIN_SECONDS = 300;
+    private static final int BATCH_SIZE = 256;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int TIMED_ROUNDS = 5;
+
+    @Test
+    public void sequentialVersusAnalysisPool()
+    {
+        PriceSeries[] market = syntheticMarket(new Random(42));
+        AnalysisPool pool = new AnalysisPool();
+        try
+        {
+            for (int i = 0; i < WARMUP_ROUNDS; i++)
+            {
+                calculate(market, 0, ITEMS);
+                pool.invoke(new MetricsTask(market, 0, ITEMS));
+            }
+
+            long sequentialNanos = 0;
+            long parallelNanos = 0;
+            double sequentialSum = 0;
+            double parallelSum = 0;
+            for (int i = 0; i < TIMED_ROUNDS; i++)
+            {
+                long start = System.nanoTime();
+                sequentialSum = calculate(market, 0, ITEMS);
+                sequentialNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                MetricsTask task = new MetricsTask(market, 0, ITEMS);
+                pool.invoke(task);
+                parallelSum = task.sum;
+                parallelNanos += System.nanoTime() - start;
+            }
+
+            // Same work either way, so the same answers
+            assertEquals(sequentialSum, parallelSum, Math.abs(sequentialSum) * 1e-9);
+
+            double sequentialMs = (double) TimeUnit.NANOSECONDS.toMicros(sequentialNanos) / 1000 / TIMED_ROUNDS;
+            double parallelMs = (double) TimeUnit.NANOSECONDS.toMicros(parallelNanos) / 1000 / TIMED_ROUNDS;
+            System.out.printf("Metrics for %d items x %d points: sequential %.1fms, AnalysisPool (%d threads) %.1fms, %.2fx speedup%n",
+                    ITEMS, POINTS, sequentialMs, AnalysisPool.parallelism(), parallelMs, sequentialMs / parallelMs);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * A random walk per item around a random base price, with random volumes
+     */
+    private static PriceSeries[] syntheticMarket(Random random)
+    {
+        PriceSeries[] market = new PriceSeries[ITEMS];
+        long start = System.currentTimeMillis() / 1000 - POINTS * FIVE_MIN_SECONDS;
+        for (int item = 0; item < ITEMS; item++)
+        {
+            HeapPriceSeries series = new HeapPriceSeries(POINTS);
+            double price = 100 + random.nextInt(1_000_000);
+            for (int i = 0; i < POINTS; i++)
+            {
+                price = Math.max(10, price * (1 + random.nextGaussian() * 0.01));
+                int high = (int) (price * (1 + random.nextDouble() * 0.03));
+                int low = (int) price;
+                series.add(start + i * FIVE_MIN_SECONDS, high, low,
+                        random.nextInt(5000), random.nextInt(5000));
+            }
+            market[item] = series;
+        }
+        return market;
+    }
+
+    /**
+     * Calculate metrics for a range of items, the way getMetrics does for an item
+     * with no cached state. Returns a checksum so the work can't be optimised away.
+     */
+    private static double calculate(PriceSeries[] market, int from, int to)
+    {
+        double sum = 0;
+        for (int i = from; i < to; i++)
+        {
+            PriceSeries series = market[i];
+            PriceHistoryService.ItemMetrics metrics = new PriceHistoryService.ItemMetrics();
+            IndicatorState.of(series).fill(series, metrics);
+            PriceSketch sketch = PriceSketch.of(series);
+            sum += metrics.volatility + metrics.rsi + metrics.maxDrawdown + sketch.spreadQuantile(0.5);
+        }
+        return sum;
+    }
+
+    /**
+     * Splits a range of items in half until it is small enough to calculate directly
+     */
+    private static final class MetricsTask extends RecursiveAction
+    {
+        private final PriceSeries[] market;
+        private final int from;
+        private final int to;
+        private double sum;
+
+        MetricsTask(PriceSeries[] market, int from, int to)
+        {
+            this.market = market;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= BATCH_SIZE)
+            {
+                sum = calculate(market, from, to);
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            MetricsTask left = new MetricsTask(market, from, mid);
+            MetricsTask right = new MetricsTask(market, mid, to);
+            invokeAll(left, right);
+            sum = left.sum + right.sum;
+        }
+    }
+}